@@ -0,0 +1,98 @@
+package com.gibado.basics.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same graph shapes as {@link GraphBenchmark} built from plain {@link CompletableFuture}s and {@link ForkJoinPool}
+ * tasks, to compare the framework overhead against
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(Graphs.SIZE)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BaselineBenchmark {
+    private static final Runnable EMPTY = () -> { };
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void createPool() {
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Void futureChain() {
+        CompletableFuture<Void> future = CompletableFuture.runAsync(EMPTY, pool);
+        for (int i = 1; i < Graphs.SIZE; i++) {
+            future = future.thenRunAsync(EMPTY, pool);
+        }
+        return future.join();
+    }
+
+    @Benchmark
+    public Void futureFanOut() {
+        CompletableFuture<?>[] leaves = new CompletableFuture<?>[Graphs.SIZE - 1];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = CompletableFuture.runAsync(EMPTY, pool);
+        }
+        return CompletableFuture.allOf(leaves).thenRunAsync(EMPTY, pool).join();
+    }
+
+    @Benchmark
+    public Void futureDiamond() {
+        CompletableFuture<Void> source = CompletableFuture.runAsync(EMPTY, pool);
+        CompletableFuture<?>[] middle = new CompletableFuture<?>[Graphs.SIZE - 2];
+        for (int i = 0; i < middle.length; i++) {
+            middle[i] = source.thenRunAsync(EMPTY, pool);
+        }
+        return CompletableFuture.allOf(middle).thenRunAsync(EMPTY, pool).join();
+    }
+
+    @Benchmark
+    public Void forkJoinFanOut() {
+        return pool.invoke(new FanOut());
+    }
+
+    /**
+     * Forks every leaf and then runs the root once they are all joined
+     */
+    private static class FanOut extends RecursiveAction {
+        @Override
+        protected void compute() {
+            List<RecursiveAction> leaves = new ArrayList<>(Graphs.SIZE - 1);
+            for (int i = 1; i < Graphs.SIZE; i++) {
+                leaves.add(new Leaf());
+            }
+            invokeAll(leaves);
+            EMPTY.run();
+        }
+    }
+
+    /**
+     * A task with no work
+     */
+    private static class Leaf extends RecursiveAction {
+        @Override
+        protected void compute() {
+            EMPTY.run();
+        }
+    }
+}
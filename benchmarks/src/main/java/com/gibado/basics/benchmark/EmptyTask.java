@@ -0,0 +1,38 @@
+package com.gibado.basics.benchmark;
+
+import com.gibado.basics.workunit.ITask;
+import com.gibado.basics.workunit.TaskShell;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link ITask} that does nothing so only the framework overhead is measured
+ */
+public class EmptyTask extends TaskShell {
+    private final List<ITask> dependents = new ArrayList<>();
+
+    /**
+     * Builds one root task waiting on every other task
+     * @return Returns the root task
+     */
+    public static ITask fanOut() {
+        EmptyTask root = new EmptyTask();
+        for (int i = 1; i < Graphs.SIZE; i++) {
+            root.dependents.add(new EmptyTask());
+        }
+        return root;
+    }
+
+    @Override
+    public void performTask(Map<String, ?> params) {
+        // Nothing to do
+    }
+
+    @Override
+    public Collection<ITask> getDependents() {
+        return dependents;
+    }
+}
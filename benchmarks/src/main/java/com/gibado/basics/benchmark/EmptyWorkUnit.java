@@ -0,0 +1,36 @@
+package com.gibado.basics.benchmark;
+
+import com.gibado.basics.sharable.ISharable;
+import com.gibado.basics.workunit.WorkUnit;
+
+import java.util.Map;
+
+/**
+ * A {@link WorkUnit} that does nothing so only the framework overhead is measured
+ */
+public class EmptyWorkUnit extends WorkUnit {
+    public static final String SHARED_KEY = "shared";
+
+    /**
+     * Creates a {@link WorkUnit} with no work and no resources
+     */
+    public EmptyWorkUnit() {
+        setName("Empty");
+    }
+
+    /**
+     * Creates a {@link WorkUnit} with no work that still has to claim the given {@link ISharable}
+     * @param shared {@link ISharable} to claim, or null to claim nothing
+     */
+    public EmptyWorkUnit(ISharable<?> shared) {
+        this();
+        if (shared != null) {
+            addResource(SHARED_KEY, shared);
+        }
+    }
+
+    @Override
+    public void performTask(Map<String, ?> params) {
+        // Nothing to do
+    }
+}
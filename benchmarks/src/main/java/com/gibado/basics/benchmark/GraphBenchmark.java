@@ -0,0 +1,64 @@
+package com.gibado.basics.benchmark;
+
+import com.gibado.basics.ProcessPlant;
+import com.gibado.basics.executor.ThreadPoolTaskExecutor;
+import com.gibado.basics.executor.WorkStealingTaskExecutor;
+import com.gibado.basics.sharable.Sharable;
+import com.gibado.basics.workunit.ITaskRunner;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ProcessPlant#queueWorkUnit} on graphs of empty units.  Scores are per unit, which for the chain is
+ * the latency of a single dependency edge.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(Graphs.SIZE)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphBenchmark {
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"chain", "fanOut", "diamond"})
+    public String shape;
+
+    /** When true every unit claims the same {@link Sharable} */
+    @Param({"false", "true"})
+    public boolean contended;
+
+    /** Which {@link com.gibado.basics.executor.ITaskExecutor} the plant runs on */
+    @Param({"workStealing", "threadPool"})
+    public String executor;
+
+    private ProcessPlant plant;
+    private Sharable<Object> shared;
+    private ITaskRunner root;
+
+    @Setup(Level.Trial)
+    public void createPlant() {
+        plant = new ProcessPlant("threadPool".equals(executor)
+                ? new ThreadPoolTaskExecutor(threads) : new WorkStealingTaskExecutor(threads));
+        shared = new Sharable<>(new Object());
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdownPlant() {
+        plant.shutdown();
+    }
+
+    @Setup(Level.Invocation)
+    public void buildGraph() {
+        root = Graphs.build(shape, contended ? shared : null);
+    }
+
+    @Benchmark
+    public ITaskRunner queueWorkUnit() {
+        plant.queueWorkUnit(root);
+        return root;
+    }
+}
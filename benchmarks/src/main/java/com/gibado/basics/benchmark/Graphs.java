@@ -0,0 +1,83 @@
+package com.gibado.basics.benchmark;
+
+import com.gibado.basics.sharable.ISharable;
+import com.gibado.basics.workunit.ITaskRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds {@link EmptyWorkUnit} graphs of a given shape.  Every shape has exactly {@link #SIZE} units so scores can be
+ * reported per unit.
+ */
+public class Graphs {
+    /** Number of units in every graph */
+    public static final int SIZE = 1000;
+
+    /**
+     * Builds a graph of the named shape
+     * @param shape One of chain, fanOut or diamond
+     * @param shared {@link ISharable} every unit has to claim, or null for no contention
+     * @return Returns the root of the graph
+     */
+    public static ITaskRunner build(String shape, ISharable<?> shared) {
+        switch (shape) {
+            case "chain":
+                return chain(shared);
+            case "fanOut":
+                return fanOut(shared);
+            case "diamond":
+                return diamond(shared);
+            default:
+                throw new IllegalArgumentException("Unknown graph shape: " + shape);
+        }
+    }
+
+    /**
+     * Builds a single line of units where each one waits on the one before it
+     * @param shared {@link ISharable} every unit has to claim, or null for no contention
+     * @return Returns the last unit in the line
+     */
+    public static ITaskRunner chain(ISharable<?> shared) {
+        ITaskRunner previous = new EmptyWorkUnit(shared);
+        for (int i = 1; i < SIZE; i++) {
+            ITaskRunner next = new EmptyWorkUnit(shared);
+            next.setDependents(previous);
+            previous = next;
+        }
+        return previous;
+    }
+
+    /**
+     * Builds one root waiting on every other unit
+     * @param shared {@link ISharable} every unit has to claim, or null for no contention
+     * @return Returns the root unit
+     */
+    public static ITaskRunner fanOut(ISharable<?> shared) {
+        List<ITaskRunner> leaves = new ArrayList<>(SIZE - 1);
+        for (int i = 1; i < SIZE; i++) {
+            leaves.add(new EmptyWorkUnit(shared));
+        }
+        ITaskRunner root = new EmptyWorkUnit(shared);
+        root.setDependents(leaves);
+        return root;
+    }
+
+    /**
+     * Builds a sink waiting on a wide middle layer where every middle unit waits on the same source
+     * @param shared {@link ISharable} every unit has to claim, or null for no contention
+     * @return Returns the sink unit
+     */
+    public static ITaskRunner diamond(ISharable<?> shared) {
+        ITaskRunner source = new EmptyWorkUnit(shared);
+        List<ITaskRunner> middle = new ArrayList<>(SIZE - 2);
+        for (int i = 2; i < SIZE; i++) {
+            ITaskRunner unit = new EmptyWorkUnit(shared);
+            unit.setDependents(source);
+            middle.add(unit);
+        }
+        ITaskRunner sink = new EmptyWorkUnit(shared);
+        sink.setDependents(middle);
+        return sink;
+    }
+}
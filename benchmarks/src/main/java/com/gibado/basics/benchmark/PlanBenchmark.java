@@ -0,0 +1,51 @@
+package com.gibado.basics.benchmark;
+
+import com.gibado.basics.ProcessPlant;
+import com.gibado.basics.plan.ExecutionPlan;
+import com.gibado.basics.workunit.ITask;
+import com.gibado.basics.workunit.ITaskRunner;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares converting the same {@link ITask} fan-out on every run with compiling it once into an
+ * {@link ExecutionPlan}.  Scores are per task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(Graphs.SIZE)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlanBenchmark {
+    @Param({"1", "4"})
+    public int threads;
+
+    private ProcessPlant plant;
+    private ITask root;
+    private ExecutionPlan plan;
+
+    @Setup(Level.Trial)
+    public void createPlant() {
+        plant = new ProcessPlant(threads);
+        root = EmptyTask.fanOut();
+        plan = plant.compile(root);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdownPlant() {
+        plant.shutdown();
+    }
+
+    @Benchmark
+    public ITaskRunner queueTask() {
+        return plant.queueTask(root);
+    }
+
+    @Benchmark
+    public ITaskRunner submitPlan() {
+        return plant.submitPlan(plan).join();
+    }
+}
@@ -0,0 +1,102 @@
+package com.gibado.basics.benchmark;
+
+import com.gibado.basics.sharable.Sharable;
+import com.gibado.basics.workunit.ITaskRunner;
+import com.gibado.basics.workunit.ParamMap;
+import com.gibado.basics.workunit.State;
+import com.gibado.basics.workunit.WorkUnitHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the hot paths every {@link ITaskRunner} goes through: claiming and releasing {@link Sharable}s and working
+ * out its {@link State}.  Run with -t to add contention on the shared {@link Sharable}s.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitivesBenchmark {
+    private static final int RESOURCE_COUNT = 4;
+    private static final int DEPENDENT_COUNT = 8;
+
+    private Sharable<Object> shared;
+    private List<Sharable<Object>> resources;
+
+    /**
+     * {@link ITaskRunner}s owned by a single benchmark thread
+     */
+    @org.openjdk.jmh.annotations.State(Scope.Thread)
+    public static class Runners {
+        ITaskRunner claimer;
+        ParamMap claimerParams;
+        ITaskRunner waiting;
+
+        @Setup(Level.Trial)
+        public void createRunners(PrimitivesBenchmark benchmark) {
+            claimer = new EmptyWorkUnit();
+            for (int i = 0; i < RESOURCE_COUNT; i++) {
+                claimer.addResource(String.valueOf(i), benchmark.resources.get(i));
+            }
+            claimerParams = claimer.getResourceSlots().newParamMap();
+
+            List<ITaskRunner> dependents = new ArrayList<>(DEPENDENT_COUNT);
+            for (int i = 0; i < DEPENDENT_COUNT; i++) {
+                ITaskRunner dependent = new EmptyWorkUnit();
+                dependent.setState(State.DONE);
+                dependents.add(dependent);
+            }
+            waiting = new EmptyWorkUnit();
+            waiting.setDependents(dependents);
+            waiting.addResource(EmptyWorkUnit.SHARED_KEY, new Sharable<>(new Object()));
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void createSharables() {
+        shared = new Sharable<>(new Object());
+        resources = new ArrayList<>(RESOURCE_COUNT);
+        for (int i = 0; i < RESOURCE_COUNT; i++) {
+            resources.add(new Sharable<>(new Object()));
+        }
+    }
+
+    @Benchmark
+    public Object sharableClaimRelease(Runners runners) {
+        Object value = shared.claim(runners.claimer);
+        if (value != null) {
+            shared.release(runners.claimer);
+        }
+        return value;
+    }
+
+    @Benchmark
+    public Map<String, Object> claimAllRequired(Runners runners) {
+        Map<String, Object> params = WorkUnitHelper.claimAllRequired(runners.claimer);
+        if (params != null) {
+            WorkUnitHelper.releaseAll(runners.claimer);
+        }
+        return params;
+    }
+
+    @Benchmark
+    public Map<String, Object> claimAllRequiredReused(Runners runners) {
+        Map<String, Object> params = WorkUnitHelper.claimAllRequired(runners.claimer, runners.claimerParams);
+        if (params != null) {
+            WorkUnitHelper.releaseAll(runners.claimer);
+        }
+        return params;
+    }
+
+    @Benchmark
+    public State updateState(Runners runners) {
+        runners.waiting.setState(State.WAITING_DEPENDENT);
+        return WorkUnitHelper.updateState(runners.waiting);
+    }
+}
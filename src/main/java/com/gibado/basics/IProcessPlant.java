@@ -1,11 +1,14 @@
 package com.gibado.basics;
 
+import com.gibado.basics.executor.ITaskExecutor;
+import com.gibado.basics.plan.ExecutionPlan;
 import com.gibado.basics.sharable.ISharable;
 import com.gibado.basics.sharable.SharableMap;
 import com.gibado.basics.workunit.ITask;
 import com.gibado.basics.workunit.ITaskRunner;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface IProcessPlant {
 
@@ -17,14 +20,79 @@ public interface IProcessPlant {
     ITaskRunner queueTask(ITask task);
 
     /**
-     * Starts working on the given WorkUnit
+     * Starts working on the given WorkUnit and waits until it has finished processing
      * @param runner {@link ITaskRunner} to process
      */
     void queueWorkUnit(ITaskRunner runner);
 
     /**
-     * Checks if a parent {@link ITaskRunner} was waiting on this {@link ITaskRunner} that is now done processing. If a parent
-     * {@link ITaskRunner} exists then this will begin attempting to process the parent {@link ITaskRunner}
+     * Converts the given {@link ITask} into an {@link ITaskRunner} and starts working on it without waiting for it to finish
+     * @param task The {@link ITask} to process
+     * @return Returns the {@link ITaskRunner#getCompletion()} future of the {@link ITaskRunner} wrapping the given {@link ITask}
+     */
+    CompletableFuture<ITaskRunner> submitTask(ITask task);
+
+    /**
+     * Starts working on the given WorkUnit without waiting for it to finish
+     * @param runner {@link ITaskRunner} to process
+     * @return Returns the {@link ITaskRunner#getCompletion()} future of the given {@link ITaskRunner}
+     */
+    CompletableFuture<ITaskRunner> submitWorkUnit(ITaskRunner runner);
+
+    /**
+     * Converts the given {@link ITask} graph into an {@link ExecutionPlan} that uses this plant's resources.  The plan can
+     * be submitted any number of times without converting the graph again.
+     * @param task The {@link ITask} to be performed last
+     * @return Returns a plan of the given {@link ITask} graph
+     */
+    ExecutionPlan compile(ITask task);
+
+    /**
+     * Starts a new run of the given {@link ExecutionPlan} without waiting for it to finish.  Runs of the same plan can
+     * overlap.
+     * @param plan {@link ExecutionPlan} to run
+     * @return Returns the {@link ITaskRunner#getCompletion()} future of the root {@link ITaskRunner} of the new run
+     */
+    CompletableFuture<ITaskRunner> submitPlan(ExecutionPlan plan);
+
+    /**
+     * Adds work to a graph that is already running.  Meant to be called from inside a running task's performTask, for
+     * work it only finds out about while running, like one child per row it just read.  The child and everything it
+     * depends on start right away, and the parent's completion, along with anything waiting on the parent, waits until
+     * the child is done.  To run something after several children, like merging their results, spawn a continuation
+     * that depends on them.  The parent stays IN_PROGRESS after its own task returns until the spawned work is done,
+     * then moves to DONE, or to ERROR if a child failed.
+     * @param parent {@link ITaskRunner} that is currently performing its task
+     * @param child {@link ITaskRunner} to process as part of the parent
+     * @return Returns the {@link ITaskRunner#getCompletion()} future of the child
+     * @throws IllegalStateException if the parent isn't performing its task
+     * @throws IllegalArgumentException if the child's graph has a cycle
+     */
+    CompletableFuture<ITaskRunner> spawn(ITaskRunner parent, ITaskRunner child);
+
+    /**
+     * Converts the given {@link ITask} into an {@link ITaskRunner} and adds it to a running graph as a child of the parent
+     * @param parent {@link ITaskRunner} that is currently performing its task
+     * @param task The {@link ITask} to process as part of the parent
+     * @return Returns the {@link ITaskRunner#getCompletion()} future of the {@link ITaskRunner} wrapping the given {@link ITask}
+     * @throws IllegalStateException if the parent isn't performing its task
+     * @see #spawn(ITaskRunner, ITaskRunner)
+     */
+    CompletableFuture<ITaskRunner> spawnTask(ITaskRunner parent, ITask task);
+
+    /**
+     * Returns true if the {@link ITaskRunner} has spawned work and hasn't been completed yet.  Such a runner is left
+     * IN_PROGRESS when its own task returns, and the plant moves it to its final
+     * {@link com.gibado.basics.workunit.State} once the spawned work is done.
+     * @param parent {@link ITaskRunner} that may have spawned work
+     * @return Returns true if the {@link ITaskRunner} is waiting on work it spawned
+     */
+    boolean hasSpawned(ITaskRunner parent);
+
+    /**
+     * Checks if a parent {@link ITaskRunner} was waiting on this {@link ITaskRunner} that is now done processing. If this was
+     * the last dependent the parent {@link ITaskRunner} was waiting on then this will begin processing the parent
+     * {@link ITaskRunner}
      * @param runner {@link ITaskRunner} that has finished processing
      */
     void signalComplete(ITaskRunner runner);
@@ -47,4 +115,26 @@ public interface IProcessPlant {
      * @param resource {@link ISharable} resource
      */
     void addResource(String key, ISharable<?> resource);
+
+    /**
+     * Hands extra work done on behalf of an {@link ITaskRunner} that is performing its task to the plant's threads.  The
+     * work waits for a thread the same way the runner would: in the runner's
+     * {@link com.gibado.basics.scheduling.FairShare} when fair sharing is on, and behind the rest of the graph when the
+     * graph is being processed by the thread that submitted it.  The work may start after the runner's task has
+     * returned, so it has to cope with finding nothing left to do.
+     * @param runner {@link ITaskRunner} the work is done for
+     * @param work Work to run
+     */
+    void executeFor(ITaskRunner runner, Runnable work);
+
+    /**
+     * Returns the {@link ITaskExecutor} {@link ITaskRunner}s are processed on
+     * @return Returns the {@link ITaskExecutor} {@link ITaskRunner}s are processed on
+     */
+    ITaskExecutor getExecutor();
+
+    /**
+     * Stops accepting new work.  Work that was already started is still finished.
+     */
+    void shutdown();
 }
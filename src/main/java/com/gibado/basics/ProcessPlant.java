@@ -1,33 +1,95 @@
 package com.gibado.basics;
 
+import com.gibado.basics.executor.ITaskExecutor;
+import com.gibado.basics.executor.WorkStealingTaskExecutor;
+import com.gibado.basics.metrics.LatencyMetrics;
+import com.gibado.basics.metrics.TraceRecorder;
+import com.gibado.basics.plan.ExecutionPlan;
+import com.gibado.basics.plan.PlanRun;
+import com.gibado.basics.scheduling.AdmissionLimit;
+import com.gibado.basics.scheduling.CriticalPathHelper;
+import com.gibado.basics.scheduling.FairShare;
+import com.gibado.basics.scheduling.FairShareScheduler;
+import com.gibado.basics.scheduling.TaskCostHistory;
 import com.gibado.basics.sharable.ISharable;
+import com.gibado.basics.sharable.ReleaseWaiter;
 import com.gibado.basics.sharable.SharableMap;
 import com.gibado.basics.workunit.*;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
-import static com.gibado.basics.workunit.WorkUnitHelper.isThreadClaimed;
+import static com.gibado.basics.scheduling.CriticalPathHelper.LONGEST_PATH_FIRST;
+import static com.gibado.basics.workunit.WorkUnitHelper.NO_TIMEOUT;
+import static com.gibado.basics.workunit.WorkUnitHelper.claimAllRequired;
+import static com.gibado.basics.workunit.WorkUnitHelper.findLocked;
 import static com.gibado.basics.workunit.WorkUnitHelper.updateState;
 
 /**
  * Object to initiate {@link WorkUnit} tasks
  */
 public class ProcessPlant implements IProcessPlant {
-	private ThreadPoolExecutor pool;
+	/** Batch threshold that turns batching off */
+	public static final long NO_BATCHING = -1;
+
+	private final ITaskExecutor executor;
 	private long timeout = -1; // TODO Add in timeout option
 	private Map<String, ISharable<?>> resourceMap;
+	private volatile TaskCostHistory costHistory;
+	private volatile LatencyMetrics latencyMetrics;
+	private volatile TraceRecorder traceRecorder;
+	private volatile AdmissionLimit admissionLimit;
+	private volatile FairShareScheduler fairShareScheduler;
+	/** Work handed out on a thread that is processing a graph it couldn't get admitted, which that thread runs itself */
+	private final ThreadLocal<ArrayDeque<Runnable>> callerRuns = new ThreadLocal<>();
+	/** Task times used to pick out tiny tasks when there isn't a cost history */
+	private final TaskCostHistory batchHistory = new TaskCostHistory();
+	/** Nanoseconds a task has to average less than to be batched, or {@link #NO_BATCHING} */
+	private volatile long batchThreshold = NO_BATCHING;
+	private volatile int maxBatchSize = 1;
+	/** {@link ITaskRunner}s ready to run, longest critical path first, while a {@link TaskCostHistory} is in use */
+	private final PriorityBlockingQueue<ITaskRunner> readyQueue = new PriorityBlockingQueue<>(11, LONGEST_PATH_FIRST);
+	/** Work spawned by each {@link ITaskRunner} that has spawned some and isn't complete yet */
+	private final Map<ITaskRunner, Spawned> spawned = new ConcurrentHashMap<>();
+	/** Hands {@link ITaskRunner}s that waited too long for resources to a thread so they can time out */
+	private final ScheduledThreadPoolExecutor resourceTimer;
 
 	/**
 	 * Creates a Process plant that will attempt to run as many {@link WorkUnit}s concurrently as possible.
 	 * @param threadCount Maximum number of {@link WorkUnit}s to process at one time
 	 */
 	public ProcessPlant(int threadCount) {
-		pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(threadCount);
+		this(new WorkStealingTaskExecutor(threadCount));
+	}
+
+	/**
+	 * Creates a Process plant that runs its {@link WorkUnit}s on the given {@link ITaskExecutor}
+	 * @param executor {@link ITaskExecutor} to process {@link WorkUnit}s with
+	 */
+	public ProcessPlant(ITaskExecutor executor) {
+		this.executor = executor;
+		this.resourceTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "ProcessPlant resource timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.resourceTimer.setRemoveOnCancelPolicy(true);
 	}
 
 	@Override
@@ -39,47 +101,356 @@ public class ProcessPlant implements IProcessPlant {
 
 	@Override
 	public void queueWorkUnit(ITaskRunner runner) {
-        runner.setProcessPlant(this);
-		if (State.READY.equals(updateState(runner))) {
-			// This WorkUnit is ready to start working
-			pool.execute(runner);
-
-			if (runner.getParent() != null) {
-				State workUnitState = updateState(runner);
-				while (!State.ERROR.equals(workUnitState) && !State.DONE.equals(updateState(runner))) {
-					try {
-						// Give the other threads a chance to work
-						Thread.sleep(5);
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-					workUnitState = updateState(runner);
+		awaitQuietly(submitWorkUnit(runner));
+	}
+
+	@Override
+	public CompletableFuture<ITaskRunner> submitTask(ITask task) {
+		return submitWorkUnit(prepareTask(task));
+	}
+
+	/**
+	 * Converts the given {@link ITask} into an {@link ITaskRunner} and starts working on it in the given
+	 * {@link FairShare} without waiting for it to finish
+	 * @param task The {@link ITask} to process
+	 * @param fairShare {@link FairShare} the whole graph waits for threads in
+	 * @return Returns the {@link ITaskRunner#getCompletion()} future of the {@link ITaskRunner} wrapping the given {@link ITask}
+	 * @see #setFairShareScheduler(FairShareScheduler)
+	 */
+	public CompletableFuture<ITaskRunner> submitTask(ITask task, FairShare fairShare) {
+		ITaskRunner runner = prepareTask(task);
+		runner.setFairShare(fairShare);
+		return submitWorkUnit(runner);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @throws IllegalArgumentException if the graph has a cycle, in which case nothing is started
+	 * @throws RejectedExecutionException if an {@link AdmissionLimit} is set and the graph doesn't fit
+	 */
+	@Override
+	public CompletableFuture<ITaskRunner> submitWorkUnit(ITaskRunner runner) {
+		List<ITaskRunner> order = pendingOrder(runner);
+		return admit(order.size(), () -> startWorkUnit(runner, order));
+	}
+
+	/**
+	 * Lists the {@link ITaskRunner}s of a graph that is about to start.  Anything already done is left alone along with
+	 * everything below it.
+	 * @param runner Root of the graph
+	 * @return Returns the {@link ITaskRunner}s of the graph, each one after everything it depends on
+	 * @throws IllegalArgumentException if the graph has a cycle
+	 */
+	private List<ITaskRunner> pendingOrder(ITaskRunner runner) {
+		return GraphHelper.dependencyOrder(runner,
+				dependent -> State.DONE.equals(dependent.getState()) ? null : dependent.getDependents(),
+				ITaskRunner::getName);
+	}
+
+	/**
+	 * Starts processing a graph
+	 * @param runner Root of the graph
+	 * @param order {@link ITaskRunner}s of the graph from {@link #pendingOrder(ITaskRunner)}
+	 * @return Returns the {@link ITaskRunner#getCompletion()} future of the root
+	 */
+	private CompletableFuture<ITaskRunner> startWorkUnit(ITaskRunner runner, List<ITaskRunner> order) {
+		// Count the unfinished dependents of every WorkUnit before anything starts so no count is seen half built
+		List<ITaskRunner> readyRunners = new ArrayList<>();
+		countPendingDependents(order, readyRunners);
+		if (State.DONE.equals(runner.getState())) {
+			WorkUnitHelper.complete(runner);
+		}
+		assignCriticalPaths(order);
+		assignFairShare(runner, order);
+		dispatchReady(readyRunners);
+		return runner.getCompletion();
+	}
+
+	@Override
+	public ExecutionPlan compile(ITask task) {
+		return ExecutionPlan.compile(task, resourceMap);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @throws RejectedExecutionException if an {@link AdmissionLimit} is set and the run doesn't fit
+	 */
+	@Override
+	public CompletableFuture<ITaskRunner> submitPlan(ExecutionPlan plan) {
+		return submitPlan(plan, null);
+	}
+
+	/**
+	 * Starts a new run of the given {@link ExecutionPlan} in the given {@link FairShare} without waiting for it to finish
+	 * @param plan {@link ExecutionPlan} to run
+	 * @param fairShare {@link FairShare} the run waits for threads in, or null to give the run a share of its own
+	 * @return Returns the {@link ITaskRunner#getCompletion()} future of the root {@link ITaskRunner} of the new run
+	 * @throws RejectedExecutionException if an {@link AdmissionLimit} is set and the run doesn't fit
+	 * @see #setFairShareScheduler(FairShareScheduler)
+	 */
+	public CompletableFuture<ITaskRunner> submitPlan(ExecutionPlan plan, FairShare fairShare) {
+		return admit(plan.size(), () -> startPlan(plan, fairShare));
+	}
+
+	/**
+	 * Starts a new run of an {@link ExecutionPlan}
+	 * @param plan {@link ExecutionPlan} to run
+	 * @param fairShare {@link FairShare} the run waits for threads in, or null
+	 * @return Returns the {@link ITaskRunner#getCompletion()} future of the root {@link ITaskRunner} of the new run
+	 */
+	private CompletableFuture<ITaskRunner> startPlan(ExecutionPlan plan, FairShare fairShare) {
+		// The run starts out with every pending dependent count already set from the plan
+		PlanRun run = plan.newRun(this);
+		run.getRoot().setFairShare(fairShare);
+		assignFairShare(run.getRoot(), run.getRunners());
+		if (costHistory != null) {
+			// Runners are in node order, which puts every parent before its dependents
+			List<ITaskRunner> order = new ArrayList<>(run.getRunners());
+			Collections.reverse(order);
+			assignCriticalPaths(order);
+		}
+		dispatchReady(run.getLeaves());
+		return run.getRoot().getCompletion();
+	}
+
+	@Override
+	public CompletableFuture<ITaskRunner> spawn(ITaskRunner parent, ITaskRunner child) {
+		if (!State.IN_PROGRESS.equals(parent.getState())) {
+			throw new IllegalStateException("Only a task that is being performed can spawn work: " + parent.getName());
+		}
+		Spawned spawn = spawned.computeIfAbsent(parent, key -> new Spawned());
+		// Work the parent is still waiting on can spawn more onto it, but nothing can once the last of it is done
+		if (spawn.pending.getAndUpdate(count -> count == 0 ? 0 : count + 1) == 0) {
+			throw new IllegalStateException("Only a task that is being performed can spawn work: " + parent.getName());
+		}
+		if (!State.IN_PROGRESS.equals(parent.getState())) {
+			// The parent finished after the first check, so what is left is at most the parent's own hold
+			if (spawn.pending.decrementAndGet() == 1) {
+				spawned.remove(parent, spawn);
+			}
+			throw new IllegalStateException("Only a task that is being performed can spawn work: " + parent.getName());
+		}
+		if (child.getFairShare() == null) {
+			// Spawned work shares threads as part of the parent's graph
+			child.setFairShare(parent.getFairShare());
+		}
+		CompletableFuture<ITaskRunner> future;
+		try {
+			// Spawned work is part of a graph that was already admitted
+			future = startWorkUnit(child, pendingOrder(child));
+		} catch (RuntimeException e) {
+			spawnFinished(parent, spawn, null);
+			throw e;
+		}
+		future.whenComplete((finished, error) -> spawnFinished(parent, spawn, error));
+		return future;
+	}
+
+	@Override
+	public CompletableFuture<ITaskRunner> spawnTask(ITaskRunner parent, ITask task) {
+		return spawn(parent, prepareTask(task));
+	}
+
+	@Override
+	public boolean hasSpawned(ITaskRunner parent) {
+		// Only removed once the parent has been signaled, so this can't change while the parent's task is returning
+		return spawned.containsKey(parent);
+	}
+
+	/**
+	 * Starts a graph once the {@link AdmissionLimit} has room for it.  A graph that is left to its caller is processed
+	 * on the calling thread: everything it hands out is run there until nothing is left that thread can run.  Work
+	 * that had to wait for a resource is picked up by the {@link ITaskExecutor} once the resource is released, and the
+	 * calling thread waits for it before returning.
+	 * @param runners Number of {@link ITaskRunner}s in the graph
+	 * @param starter Starts the graph and returns the future of its root
+	 * @return Returns the future of the graph's root
+	 * @throws RejectedExecutionException if the graph doesn't fit
+	 */
+	private CompletableFuture<ITaskRunner> admit(int runners, Supplier<CompletableFuture<ITaskRunner>> starter) {
+		AdmissionLimit limit = admissionLimit;
+		if (limit == null) {
+			return startAdmitted(starter);
+		}
+		int held = limit.admit(runners);
+		if (held == 0) {
+			return runOnCaller(starter);
+		}
+		CompletableFuture<ITaskRunner> future;
+		try {
+			future = startAdmitted(starter);
+		} catch (RuntimeException e) {
+			limit.release(held);
+			throw e;
+		}
+		future.whenComplete((finished, error) -> limit.release(held));
+		return future;
+	}
+
+	/**
+	 * Starts a graph that doesn't have to be processed by its caller.  A task of a graph that is being processed by
+	 * its caller can submit one, and its work goes to the {@link ITaskExecutor} instead of that caller's queue, which
+	 * nothing drains while the task waits on it.
+	 * @param starter Starts the graph and returns the future of its root
+	 * @return Returns the future of the graph's root
+	 */
+	private CompletableFuture<ITaskRunner> startAdmitted(Supplier<CompletableFuture<ITaskRunner>> starter) {
+		ArrayDeque<Runnable> callerWork = callerRuns.get();
+		if (callerWork == null) {
+			return starter.get();
+		}
+		callerRuns.remove();
+		try {
+			return starter.get();
+		} finally {
+			callerRuns.set(callerWork);
+		}
+	}
+
+	/**
+	 * Starts a graph and runs the work it hands out on the calling thread
+	 * @param starter Starts the graph and returns the future of its root
+	 * @return Returns the future of the graph's root, which is done by the time this returns
+	 */
+	private CompletableFuture<ITaskRunner> runOnCaller(Supplier<CompletableFuture<ITaskRunner>> starter) {
+		ArrayDeque<Runnable> outer = callerRuns.get();
+		ArrayDeque<Runnable> work = new ArrayDeque<>();
+		callerRuns.set(work);
+		try {
+			CompletableFuture<ITaskRunner> future = starter.get();
+			for (Runnable next = work.poll(); next != null; next = work.poll()) {
+				try {
+					next.run();
+				} catch (RuntimeException e) {
+					// Already recorded on the runner, the rest of the graph still has to run
 				}
 			}
-		} else {
-			// This WorkUnit needs other WorkUnit(s) to be done first
-			for (ITaskRunner dependent : runner.getDependents()) {
-				// Check if any of the dependents are ready
-				queueWorkUnit(dependent);
+			// The caller is held until the whole graph is done so it can't submit more in the meantime
+			awaitQuietly(future);
+			return future;
+		} finally {
+			if (outer == null) {
+				callerRuns.remove();
+			} else {
+				callerRuns.set(outer);
+			}
+		}
+	}
+
+	/**
+	 * Waits for a graph to finish without throwing its error, which is kept on the future
+	 * @param future Future of the graph's root
+	 */
+	private void awaitQuietly(CompletableFuture<ITaskRunner> future) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// The error is kept on the runner and its State
+		}
+	}
+
+	/**
+	 * Counts down the work a parent spawned and completes the parent after the last of it
+	 * @param parent {@link ITaskRunner} that spawned the work
+	 * @param spawn Work spawned by the parent
+	 * @param error What the spawned work failed with, or null if it finished
+	 */
+	private void spawnFinished(ITaskRunner parent, Spawned spawn, Throwable error) {
+		if (error != null && spawn.failure == null) {
+			spawn.failure = error instanceof Exception ? (Exception) error : new IllegalStateException(error);
+		}
+		if (spawn.pending.decrementAndGet() == 0) {
+			completeSpawned(parent, spawn);
+		}
+	}
+
+	/**
+	 * Completes a parent once it and everything it spawned has finished
+	 * @param parent {@link ITaskRunner} that spawned work
+	 * @param spawn Work spawned by the parent
+	 */
+	private void completeSpawned(ITaskRunner parent, Spawned spawn) {
+		Exception failure = spawn.failure;
+		// A parent whose own task succeeded was left IN_PROGRESS for this, one whose task failed is already ERROR
+		if (State.IN_PROGRESS.equals(parent.getState())) {
+			if (failure == null) {
+				WorkUnitHelper.moveState(parent, State.IN_PROGRESS, State.DONE);
+			} else {
+				parent.setExceptionThrown(failure);
+				if (WorkUnitHelper.fail(parent)) {
+					// Its resources were released when its own task finished, so there are no claimed values to hand over
+					parent.exceptionHandling(failure, Collections.emptyMap());
+				}
 			}
 		}
+		// Removed after the final State is set so a late spawn that makes a new entry sees the parent has finished
+		spawned.remove(parent, spawn);
+		propagateComplete(parent);
 	}
 
 	@Override
 	public void signalComplete(ITaskRunner runner) {
-	    ITaskRunner parent = runner.getParent();
-	    // If there's no parent then this line of work is done
-        if(parent != null) {
-            State parentState = updateState(parent);
-		    if (State.ERROR.equals(updateState(runner))) {
-		    	// This will cascade the Error state up this line of work
-                signalComplete(parent);
-		    } else {
-		        if (!isThreadClaimed(parent) && (State.READY.equals(parentState) || State.WAITING_RESOURCE.equals(parentState))) {
-		        	// Starts working on the parent WorkUnit
-                    pool.execute(parent);
-                }
-            }
+		Spawned spawn = spawned.get(runner);
+		if (spawn != null) {
+			// Let go of the runner's own hold, the last piece of spawned work to finish completes it
+			if (spawn.pending.decrementAndGet() == 0) {
+				completeSpawned(runner, spawn);
+			}
+			return;
+		}
+		propagateComplete(runner);
+	}
+
+	/**
+	 * Records a finished {@link ITaskRunner}, completes its future and starts any parents that were waiting on it
+	 * @param runner {@link ITaskRunner} that has finished processing, along with anything it spawned
+	 */
+	private void propagateComplete(ITaskRunner runner) {
+		// Errors cascade up a work list instead of recursing so a failure at the bottom of a long chain can't overflow
+		ArrayDeque<ITaskRunner> failed = null;
+		ITaskRunner finished = runner;
+		while (finished != null) {
+			record(finished);
+			// If there are no parents then this line of work is done
+			for (ITaskRunner parent : finished.getParents()) {
+				// This was the last dependent the parent was waiting on
+				if (parent.decrementPendingDependents() == 0 && !dispatch(parent)) {
+					if (failed == null) {
+						failed = new ArrayDeque<>();
+					}
+					failed.add(parent);
+				}
+			}
+			WorkUnitHelper.complete(finished);
+			finished = failed == null ? null : failed.poll();
+		}
+	}
+
+	/**
+	 * Records a runner that is no longer processing in whatever history, metrics and trace are turned on
+	 * @param runner {@link ITaskRunner} that is no longer processing
+	 */
+	private void record(ITaskRunner runner) {
+		TaskCostHistory history = getMeasuredHistory(batchThreshold);
+		LatencyMetrics metrics = latencyMetrics;
+		if (State.DONE.equals(runner.getState())) {
+			if (history != null) {
+				history.record(runner);
+			}
+			if (metrics != null) {
+				metrics.record(runner);
+			}
+		}
+		FairShareScheduler scheduler = fairShareScheduler;
+		if (scheduler != null && State.DONE.equals(runner.getState())) {
+			scheduler.record(runner);
+		}
+		TraceRecorder recorder = traceRecorder;
+		if (recorder != null) {
+			// A runner that ran calls back on the thread that ran it
+			recorder.record(runner);
 		}
 	}
 
@@ -101,28 +472,538 @@ public class ProcessPlant implements IProcessPlant {
 	}
 
 	/**
-	 * Converts an {@link ITask} into an {@link ITaskRunner}
+	 * Turns on critical path scheduling.  Every finished task's time is added to the given history, and ready
+	 * {@link ITaskRunner}s are started in order of the longest expected chain of work still waiting on them so the
+	 * longest chain is always moving.  Reuse the same history across runs for the estimates to improve.
+	 * @param costHistory History of task times to schedule with, or null to start ready {@link ITaskRunner}s in the
+	 *                       order they become ready
+	 */
+	public void setCostHistory(TaskCostHistory costHistory) {
+		this.costHistory = costHistory;
+	}
+
+	/**
+	 * Returns the history of task times used for critical path scheduling
+	 * @return Returns the history of task times used for critical path scheduling, or null if it is turned off
+	 */
+	public TaskCostHistory getCostHistory() {
+		return costHistory;
+	}
+
+	/**
+	 * Turns on latency metrics.  Every task that finishes adds how long it waited for a thread, how long it waited for
+	 * resources and how long it ran to the histograms kept for its name.
+	 * @param latencyMetrics Metrics to record into, or null to stop recording
+	 */
+	public void setLatencyMetrics(LatencyMetrics latencyMetrics) {
+		this.latencyMetrics = latencyMetrics;
+	}
+
+	/**
+	 * Returns the latency metrics finished tasks are recorded in
+	 * @return Returns the latency metrics finished tasks are recorded in, or null if they are turned off
+	 */
+	public LatencyMetrics getLatencyMetrics() {
+		return latencyMetrics;
+	}
+
+	/**
+	 * Turns on timeline tracing.  Every task that gets a thread is recorded with the thread that ran it and when it
+	 * became ready, got its resources, started and finished.  Close the recorder once the runs of interest are done to
+	 * finish the trace.
+	 * @param traceRecorder Recorder to write the trace with, or null to stop tracing
+	 */
+	public void setTraceRecorder(TraceRecorder traceRecorder) {
+		this.traceRecorder = traceRecorder;
+	}
+
+	/**
+	 * Returns the recorder the timeline is traced with
+	 * @return Returns the recorder the timeline is traced with, or null if tracing is turned off
+	 */
+	public TraceRecorder getTraceRecorder() {
+		return traceRecorder;
+	}
+
+	/**
+	 * Limits how much submitted work is taken on at once.  Graphs hold their share of the capacity from when they are
+	 * submitted until their root has finished, and work they spawn doesn't count separately.  A submission that doesn't
+	 * fit is handled by the limit's {@link AdmissionLimit.Overflow} policy.
+	 * @param admissionLimit Limit to admit submissions by, or null to take on everything submitted.  Replacing a limit
+	 *                       that graphs still hold capacity in lets those graphs finish against the old one.
+	 */
+	public void setAdmissionLimit(AdmissionLimit admissionLimit) {
+		this.admissionLimit = admissionLimit;
+	}
+
+	/**
+	 * Returns the limit submissions are admitted by, which also shows how much work is admitted
+	 * @return Returns the limit submissions are admitted by, or null if everything submitted is taken on
+	 */
+	public AdmissionLimit getAdmissionLimit() {
+		return admissionLimit;
+	}
+
+	/**
+	 * Turns on fair sharing of threads between graphs.  Every submitted graph waits for threads in a {@link FairShare},
+	 * either the one set on its root or a new one with a weight of 1, and shares with ready work take turns by weight.
+	 * This keeps a huge graph from holding up small ones that are submitted while it runs.  Within a share the task
+	 * with the longest remaining critical path goes first when a {@link TaskCostHistory} is set, otherwise tasks go in
+	 * the order they became ready.
+	 * @param fairShareScheduler Scheduler to share threads with, or null to start ready {@link ITaskRunner}s without
+	 *                           regard to their graph
+	 */
+	public void setFairShareScheduler(FairShareScheduler fairShareScheduler) {
+		this.fairShareScheduler = fairShareScheduler;
+	}
+
+	/**
+	 * Returns the scheduler threads are shared between graphs with
+	 * @return Returns the scheduler threads are shared between graphs with, or null if fair sharing is turned off
+	 */
+	public FairShareScheduler getFairShareScheduler() {
+		return fairShareScheduler;
+	}
+
+	/**
+	 * Turns on batching of tiny tasks.  Ready sibling {@link ITaskRunner}s that have taken less than the threshold on
+	 * average, and don't share any {@link ISharable}s, are run back to back on one thread instead of each being handed
+	 * to the {@link ITaskExecutor} on its own.  Tasks are measured by name as they finish, using the cost history when
+	 * there is one, so nothing is batched until it has run at least once.
+	 * @param threshold Tasks averaging less than this are batched, or {@link #NO_BATCHING}
+	 * @param unit {@link TimeUnit} of the threshold
+	 * @param maxBatchSize Most {@link ITaskRunner}s to run in one batch
+	 * @throws IllegalArgumentException if the threshold is negative and not {@link #NO_BATCHING}
+	 */
+	public void setBatching(long threshold, TimeUnit unit, int maxBatchSize) {
+		if (threshold < 0 && threshold != NO_BATCHING) {
+			throw new IllegalArgumentException("Batch threshold can't be negative: " + threshold);
+		}
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.batchThreshold = threshold == NO_BATCHING ? NO_BATCHING : unit.toNanos(threshold);
+	}
+
+	/**
+	 * Returns the history finished task times are recorded in
+	 * @param threshold Batching threshold read once by the caller, so batching being turned off meanwhile can't
+	 *                  change the answer halfway through
+	 * @return Returns the history finished task times are recorded in, or null if nothing uses them
+	 */
+	private TaskCostHistory getMeasuredHistory(long threshold) {
+		TaskCostHistory history = costHistory;
+		if (history == null && threshold != NO_BATCHING) {
+			history = batchHistory;
+		}
+		return history;
+	}
+
+	@Override
+	public ITaskExecutor getExecutor() {
+		return executor;
+	}
+
+	@Override
+	public void shutdown() {
+		resourceTimer.shutdownNow();
+		executor.shutdown();
+	}
+
+	/**
+	 * Converts an {@link ITask} graph into {@link ITaskRunner}s.  An {@link ITask} that is a dependent of more than one
+	 * {@link ITask} is only converted once and that {@link ITaskRunner} gets every dependent {@link ITask} as a parent.
+	 * Tasks are converted in dependency order, so every dependent already has its {@link ITaskRunner}.
 	 * @param task Task to prepare for processing
 	 * @return Returns an {@link ITaskRunner} based on the given {@link ITask}
+	 * @throws IllegalArgumentException if the graph has a cycle or a task needs a resource that hasn't been added
 	 */
 	private ITaskRunner prepareTask(ITask task) {
-		Collection<ITask> dependents = task.getDependents();
-		// Convert the task into a runner
-		ITaskRunner runner = new WorkUnitShell(task);
-		// Connect required resources to the runner
-		for (String key : task.getResourceKeys()) {
-			runner.addResource(key, this.resourceMap.get(key));
-		}
-
-		// Convert all sub-tasks into runners and connect them to the new runner
-		List<ITaskRunner> dependentRunners = new ArrayList<>(dependents.size());
-		for (ITask dependent : dependents) {
-			ITaskRunner dependentRunner = prepareTask(dependent);
-			// Set reference back to parent task
-			dependentRunner.setParent(runner);
-			dependentRunners.add(dependentRunner);
-		}
-		runner.setDependents(dependentRunners);
+		List<ITask> order = GraphHelper.dependencyOrder(task);
+		Map<ITask, ITaskRunner> prepared = new IdentityHashMap<>(order.size());
+		ITaskRunner runner = null;
+		for (ITask current : order) {
+			// Convert the task into a runner
+			runner = new WorkUnitShell(current);
+			prepared.put(current, runner);
+			// Connect required resources to the runner
+			Collection<String> readKeys = current.getReadResourceKeys();
+			for (String key : current.getResourceKeys()) {
+				ISharable<?> resource = resourceMap == null ? null : resourceMap.get(key);
+				if (resource == null) {
+					throw new IllegalArgumentException(current.getName() + " needs a resource that hasn't been added: " + key);
+				}
+				if (readKeys.contains(key)) {
+					runner.addReadResource(key, resource);
+				} else {
+					runner.addResource(key, resource);
+				}
+			}
+
+			// Connect the runners of all sub-tasks to the new runner
+			Collection<ITask> dependents = current.getDependents();
+			List<ITaskRunner> dependentRunners = new ArrayList<>(dependents == null ? 0 : dependents.size());
+			if (dependents != null) {
+				for (ITask dependent : dependents) {
+					ITaskRunner dependentRunner = prepared.get(dependent);
+					// The same task listed twice is only waited on once
+					if (dependentRunner != null && !dependentRunner.getParents().contains(runner)) {
+						// Set reference back to parent task
+						dependentRunner.addParent(runner);
+						dependentRunners.add(dependentRunner);
+					}
+				}
+			}
+			runner.setDependents(dependentRunners);
+		}
+		// The root is last
 		return runner;
 	}
+
+	/**
+	 * Sets the pending dependent count on every {@link ITaskRunner} in the graph that still needs to be processed.
+	 * An {@link ITaskRunner} with several parents is counted once by each of them.
+	 * @param order Every {@link ITaskRunner} to process, each one after everything it depends on
+	 * @param readyRunners Collects the {@link ITaskRunner}s that are not waiting on any dependents
+	 */
+	private void countPendingDependents(List<ITaskRunner> order, List<ITaskRunner> readyRunners) {
+		for (ITaskRunner runner : order) {
+			runner.setProcessPlant(this);
+			if (State.DONE.equals(runner.getState())) {
+				continue;
+			}
+			int pending = 0;
+			if (runner.getDependents() != null) {
+				for (ITaskRunner dependent : runner.getDependents()) {
+					if (!State.DONE.equals(dependent.getState())) {
+						pending++;
+					}
+				}
+			}
+			runner.setPendingDependents(pending);
+			if (pending == 0) {
+				readyRunners.add(runner);
+			}
+		}
+	}
+
+	/**
+	 * Starts processing an {@link ITaskRunner} whose dependents have all finished.  When this is called from the thread
+	 * that just finished the last dependent, the {@link ITaskExecutor} can keep the parent on that same thread.
+	 * @param runner {@link ITaskRunner} that is no longer waiting on dependents
+	 * @return Returns false if a dependent failed, and the caller has to signal that this one is complete as well
+	 */
+	private boolean dispatch(ITaskRunner runner) {
+		runner.getTimes().setReady(System.nanoTime());
+		if (State.ERROR.equals(updateState(runner))) {
+			return false;
+		}
+		if (claimOrAwait(runner, null, runner.getResourceSlots().newParamMap())) {
+			start(runner);
+		}
+		return true;
+	}
+
+	/**
+	 * Claims every {@link ISharable} the {@link ITaskRunner} needs so it never holds a thread while waiting for them.  If
+	 * one of them is locked, the {@link ITaskRunner} is queued on it without a thread and dispatched again by whoever
+	 * releases it.
+	 * @param runner {@link ITaskRunner} to claim resources for
+	 * @param signaled {@link ReleaseWaiter} whose release led to this attempt, or null
+	 * @param params {@link ParamMap} to claim into, kept by a waiting {@link ITaskRunner} for its next attempt
+	 * @return Returns true if the {@link ITaskRunner} should be started now, false if it is waiting on a release
+	 */
+	private boolean claimOrAwait(ITaskRunner runner, ReleaseWaiter signaled, ParamMap params) {
+		while (true) {
+			if (claimAllRequired(runner, params) != null) {
+				runner.setClaimedParams(params);
+				if (signaled != null) {
+					// Other readers waiting on the same release may be able to share it
+					signaled.passOn();
+				}
+				return true;
+			}
+			ISharable<?> locked = findLocked(runner);
+			if (locked == null) {
+				// Whatever was in the way has already been released
+				continue;
+			}
+			long remaining = runner.getTimeout() == NO_TIMEOUT ? NO_TIMEOUT
+					: runner.getTimeout() - runner.getTimes().millisSinceReady(System.nanoTime());
+			if (signaled != null) {
+				// The release that led here wasn't used so let the next waiter try
+				signaled.passOn();
+				signaled = null;
+			}
+			if (remaining != NO_TIMEOUT && remaining <= 0) {
+				// Let the runner report that it timed out
+				return true;
+			}
+			ResourceWait wait = new ResourceWait(runner, params);
+			locked.awaitRelease(wait.waiter);
+			// Check again now that the waiter is registered so a release in between isn't missed
+			if (findLocked(runner) == locked || !wait.waiter.cancel()) {
+				if (remaining != NO_TIMEOUT) {
+					wait.timeout = resourceTimer.schedule(wait::expire, remaining, TimeUnit.MILLISECONDS);
+				}
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Assigns the remaining critical path length of every given {@link ITaskRunner} when critical path scheduling is on
+	 * @param dependencyOrder Every {@link ITaskRunner} in a graph that is about to start, each one after everything it
+	 *                        depends on
+	 */
+	private void assignCriticalPaths(List<ITaskRunner> dependencyOrder) {
+		TaskCostHistory history = costHistory;
+		if (history != null) {
+			CriticalPathHelper.assignCriticalPaths(dependencyOrder, history);
+		}
+	}
+
+	/**
+	 * Gives every {@link ITaskRunner} in a graph that is about to start the {@link FairShare} of its root when fair
+	 * sharing is on.  A root without a share gets one of its own.
+	 * @param root Root of the graph
+	 * @param runners Every {@link ITaskRunner} in the graph
+	 */
+	private void assignFairShare(ITaskRunner root, List<ITaskRunner> runners) {
+		if (fairShareScheduler == null) {
+			return;
+		}
+		FairShare share = root.getFairShare();
+		if (share == null) {
+			share = new FairShare(root.getName());
+			root.setFairShare(share);
+		}
+		for (ITaskRunner runner : runners) {
+			if (runner.getFairShare() == null) {
+				runner.setFairShare(share);
+			}
+		}
+	}
+
+	/**
+	 * Starts processing {@link ITaskRunner}s that aren't waiting on any dependents
+	 * @param readyRunners {@link ITaskRunner}s that are no longer waiting on dependents
+	 */
+	private void dispatchReady(List<ITaskRunner> readyRunners) {
+		long threshold = batchThreshold;
+		if (threshold == NO_BATCHING) {
+			for (ITaskRunner readyRunner : readyRunners) {
+				if (!dispatch(readyRunner)) {
+					// This will cascade the Error state up this line of work
+					signalComplete(readyRunner);
+				}
+			}
+		} else {
+			dispatchBatched(readyRunners, threshold);
+		}
+	}
+
+	/**
+	 * Starts processing ready sibling {@link ITaskRunner}s, grouping the tiny ones into batches.  Batches are kept
+	 * small enough that there is still at least one for every thread the {@link ITaskExecutor} keeps busy.
+	 * @param readyRunners {@link ITaskRunner}s that are no longer waiting on dependents
+	 * @param threshold Nanoseconds a task has to average less than to be batched
+	 */
+	private void dispatchBatched(List<ITaskRunner> readyRunners, long threshold) {
+		TaskCostHistory history = getMeasuredHistory(threshold);
+		List<ITaskRunner> tiny = new ArrayList<>();
+		for (ITaskRunner readyRunner : readyRunners) {
+			long average = history.getAverageNanos(readyRunner.getName());
+			if (average == TaskCostHistory.UNKNOWN || average >= threshold) {
+				if (!dispatch(readyRunner)) {
+					signalComplete(readyRunner);
+				}
+			} else {
+				tiny.add(readyRunner);
+			}
+		}
+		int parallelism = Math.max(1, executor.getParallelism());
+		int batchSize = Math.min(maxBatchSize, (tiny.size() + parallelism - 1) / parallelism);
+		List<ITaskRunner> batch = new ArrayList<>();
+		Set<ISharable<?>> batchResources = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (ITaskRunner runner : tiny) {
+			if (batch.size() >= batchSize || !addResources(runner, batchResources)) {
+				dispatchBatch(batch);
+				batch = new ArrayList<>();
+				batchResources.clear();
+				addResources(runner, batchResources);
+			}
+			batch.add(runner);
+		}
+		dispatchBatch(batch);
+	}
+
+	/**
+	 * Adds the {@link ISharable}s an {@link ITaskRunner} needs to a batch unless the batch already uses one of them
+	 * @param runner {@link ITaskRunner} joining the batch
+	 * @param batchResources {@link ISharable}s used by the batch so far
+	 * @return Returns true if the {@link ITaskRunner}'s {@link ISharable}s were added
+	 */
+	private boolean addResources(ITaskRunner runner, Set<ISharable<?>> batchResources) {
+		ResourceSlots slots = runner.getResourceSlots();
+		for (int slot = 0; slot < slots.size(); slot++) {
+			if (batchResources.contains(slots.getSharable(slot))) {
+				return false;
+			}
+		}
+		for (int slot = 0; slot < slots.size(); slot++) {
+			batchResources.add(slots.getSharable(slot));
+		}
+		return true;
+	}
+
+	/**
+	 * Runs every {@link ITaskRunner} in the batch that could claim its resources, one after another, as a single piece
+	 * of work.  Each {@link ITaskRunner} still goes through its own {@link WorkUnitHelper#runLogic} so its {@link State}
+	 * and times are kept the same as if it had run alone.
+	 * @param batch Tiny {@link ITaskRunner}s with no {@link ISharable}s in common
+	 */
+	private void dispatchBatch(List<ITaskRunner> batch) {
+		List<ITaskRunner> startable = new ArrayList<>(batch.size());
+		for (ITaskRunner runner : batch) {
+			runner.getTimes().setReady(System.nanoTime());
+			if (State.ERROR.equals(updateState(runner))) {
+				signalComplete(runner);
+			} else if (claimOrAwait(runner, null, runner.getResourceSlots().newParamMap())) {
+				startable.add(runner);
+			}
+		}
+		if (startable.size() == 1) {
+			start(startable.get(0));
+		} else if (!startable.isEmpty()) {
+			long queued = System.nanoTime();
+			for (ITaskRunner runner : startable) {
+				runner.getTimes().setQueued(queued);
+			}
+			execute(() -> {
+				for (ITaskRunner runner : startable) {
+					try {
+						runner.run();
+					} catch (RuntimeException e) {
+						// Already recorded on the runner, the rest of the batch still has to run
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Hands an {@link ITaskRunner} that is ready to go to the {@link ITaskExecutor}
+	 * @param runner {@link ITaskRunner} that is no longer waiting on dependents or resources
+	 */
+	private void start(ITaskRunner runner) {
+		runner.getTimes().setQueued(System.nanoTime());
+		FairShareScheduler scheduler = fairShareScheduler;
+		ArrayDeque<Runnable> callerWork = callerRuns.get();
+		if (callerWork != null) {
+			// A graph left to its caller runs its own runners, not whatever other graphs have waiting in the shared queues
+			callerWork.add(runner);
+		} else if (scheduler != null && runner.getFairShare() != null) {
+			// Like the critical path queue, each turn runs whichever runner's share is furthest behind at that time
+			scheduler.add(runner);
+			execute(() -> runFairest(scheduler));
+		} else if (costHistory == null) {
+			execute(runner);
+		} else {
+			// Every queued runner gets its own turn, but each turn runs whichever runner is most urgent at that time
+			readyQueue.add(runner);
+			execute(this::runMostUrgent);
+		}
+	}
+
+	@Override
+	public void executeFor(ITaskRunner runner, Runnable work) {
+		FairShareScheduler scheduler = fairShareScheduler;
+		if (callerRuns.get() == null && scheduler != null && runner.getFairShare() != null) {
+			scheduler.add(runner, work);
+			execute(() -> runFairest(scheduler));
+		} else {
+			execute(work);
+		}
+	}
+
+	/**
+	 * Hands work to the {@link ITaskExecutor}, or to the calling thread if it is processing a graph itself
+	 * @param work Work to run
+	 */
+	private void execute(Runnable work) {
+		ArrayDeque<Runnable> callerWork = callerRuns.get();
+		if (callerWork != null) {
+			callerWork.add(work);
+		} else {
+			executor.execute(work);
+		}
+	}
+
+	/**
+	 * Runs the ready {@link ITaskRunner} with the longest remaining critical path
+	 */
+	private void runMostUrgent() {
+		ITaskRunner runner = readyQueue.poll();
+		if (runner != null) {
+			runner.run();
+		}
+	}
+
+	/**
+	 * Runs the ready work of the {@link FairShare} that has had the least of its share of the threads
+	 * @param scheduler Scheduler the work was queued in
+	 */
+	private void runFairest(FairShareScheduler scheduler) {
+		Runnable work = scheduler.poll();
+		if (work != null) {
+			work.run();
+		}
+	}
+
+	/**
+	 * Work spawned by one {@link ITaskRunner}.  The count starts at one for the {@link ITaskRunner} itself.
+	 */
+	private static class Spawned {
+		private final AtomicInteger pending = new AtomicInteger(1);
+		private volatile Exception failure;
+	}
+
+	/**
+	 * An {@link ITaskRunner} queued on a locked {@link ISharable} without a thread
+	 */
+	private class ResourceWait implements Runnable {
+		private final ITaskRunner runner;
+		/** Left empty by the failed claim, so the next attempt claims into it again */
+		private final ParamMap params;
+		// Made before it is registered so a release that lands right away already has it
+		private final ReleaseWaiter waiter = new ReleaseWaiter(this);
+		private volatile ScheduledFuture<?> timeout;
+
+		private ResourceWait(ITaskRunner runner, ParamMap params) {
+			this.runner = runner;
+			this.params = params;
+		}
+
+		/**
+		 * Called by the thread releasing the {@link ISharable} to try the {@link ITaskRunner} again
+		 */
+		@Override
+		public void run() {
+			ScheduledFuture<?> scheduled = timeout;
+			if (scheduled != null) {
+				scheduled.cancel(false);
+			}
+			if (claimOrAwait(runner, waiter, params)) {
+				start(runner);
+			}
+		}
+
+		/**
+		 * Starts the {@link ITaskRunner} once it has waited too long so it can fail with a timeout
+		 */
+		private void expire() {
+			if (waiter.cancel()) {
+				start(runner);
+			}
+		}
+	}
 }
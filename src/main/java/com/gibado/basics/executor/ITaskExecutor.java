@@ -0,0 +1,26 @@
+package com.gibado.basics.executor;
+
+import com.gibado.basics.IProcessPlant;
+import com.gibado.basics.workunit.ITaskRunner;
+
+/**
+ * Runs the work an {@link IProcessPlant} hands out.  This is where the threads that process {@link ITaskRunner}s live.
+ */
+public interface ITaskExecutor {
+    /**
+     * Runs the given work on one of this executor's threads
+     * @param task Work to run, usually an {@link ITaskRunner}
+     */
+    void execute(Runnable task);
+
+    /**
+     * Returns the number of threads this executor tries to keep busy
+     * @return Returns the number of threads this executor tries to keep busy
+     */
+    int getParallelism();
+
+    /**
+     * Stops accepting new work.  Work that was already handed out is still finished.
+     */
+    void shutdown();
+}
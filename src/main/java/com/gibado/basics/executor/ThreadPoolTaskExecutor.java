@@ -0,0 +1,38 @@
+package com.gibado.basics.executor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * An {@link ITaskExecutor} backed by a fixed size {@link ThreadPoolExecutor} where every thread takes work from one
+ * shared queue
+ */
+public class ThreadPoolTaskExecutor implements ITaskExecutor {
+    private final ExecutorService pool;
+    private final int threadCount;
+
+    /**
+     * Creates an executor with a fixed number of threads sharing one queue
+     * @param threadCount Number of threads
+     */
+    public ThreadPoolTaskExecutor(int threadCount) {
+        this.pool = Executors.newFixedThreadPool(threadCount);
+        this.threadCount = threadCount;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        pool.execute(task);
+    }
+
+    @Override
+    public int getParallelism() {
+        return threadCount;
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
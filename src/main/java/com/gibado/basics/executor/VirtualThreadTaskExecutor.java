@@ -0,0 +1,39 @@
+package com.gibado.basics.executor;
+
+import com.gibado.basics.workunit.ITaskRunner;
+
+/**
+ * An {@link ITaskExecutor} that runs every {@link ITaskRunner} on its own virtual thread.  Virtual threads need Java
+ * 21 or newer, this version is only used on older runtimes and can't be created.  The multi-release jar built by the
+ * java21 profile replaces it with one that works.
+ */
+public class VirtualThreadTaskExecutor implements ITaskExecutor {
+    /**
+     * Returns true if the current runtime supports virtual threads
+     * @return Returns true if the current runtime supports virtual threads
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Always fails since this runtime has no virtual threads
+     * @throws UnsupportedOperationException Virtual threads need Java 21 or newer
+     */
+    public VirtualThreadTaskExecutor() {
+        throw new UnsupportedOperationException("Virtual threads need Java 21 or newer");
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        throw new UnsupportedOperationException("Virtual threads need Java 21 or newer");
+    }
+
+    @Override
+    public int getParallelism() {
+        return 0;
+    }
+
+    @Override
+    public void shutdown() { }
+}
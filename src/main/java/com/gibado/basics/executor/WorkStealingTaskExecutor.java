@@ -0,0 +1,64 @@
+package com.gibado.basics.executor;
+
+import com.gibado.basics.workunit.ITaskRunner;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * An {@link ITaskExecutor} where every thread has its own queue of work and idle threads steal from busy ones.  Work
+ * handed out from one of this executor's own threads, like a parent whose last dependent just finished, is pushed on
+ * that thread's queue and is the next thing it runs, so it never goes through a shared queue and the data the
+ * dependent produced is still in cache.
+ */
+public class WorkStealingTaskExecutor implements ITaskExecutor {
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a work stealing executor
+     * @param threadCount Number of threads to keep busy
+     */
+    public WorkStealingTaskExecutor(int threadCount) {
+        this(new ForkJoinPool(threadCount));
+    }
+
+    /**
+     * Creates a work stealing executor on top of an existing {@link ForkJoinPool}
+     * @param pool {@link ForkJoinPool} to run work on
+     */
+    public WorkStealingTaskExecutor(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        // Exceptions are kept on the ITaskRunner so the adapted task swallowing them doesn't lose anything
+        ForkJoinTask<?> forkJoinTask = ForkJoinTask.adapt(task);
+        Thread current = Thread.currentThread();
+        if (current instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) current).getPool() == pool) {
+            // Stay on this worker
+            forkJoinTask.fork();
+        } else {
+            pool.execute(forkJoinTask);
+        }
+    }
+
+    @Override
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Returns the {@link ForkJoinPool} that {@link ITaskRunner}s are run on
+     * @return Returns the {@link ForkJoinPool} that {@link ITaskRunner}s are run on
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+}
@@ -0,0 +1,82 @@
+package com.gibado.basics.metrics;
+
+import com.gibado.basics.sharable.ISharable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Finds the {@link ISharable}s that hold a graph back.  Resources are wrapped with {@link #profile} and everything
+ * claimed through the wrapper is recorded, so claims made on the unwrapped {@link ISharable} are not seen.
+ */
+public class ContentionProfiler {
+    private final ConcurrentMap<String, ResourceContention> contentions = new ConcurrentHashMap<>();
+
+    /**
+     * Wraps an {@link ISharable} so its claims are recorded under the given name.  Resources profiled under the same
+     * name are recorded together.  An {@link ISharable} that is already profiled is returned as is.
+     * @param name Name to record the resource under, like its resource key
+     * @param sharable {@link ISharable} to profile
+     * @param <T> Object type
+     * @return Returns the wrapped {@link ISharable} to hand out in place of the original
+     */
+    public <T> ISharable<T> profile(String name, ISharable<T> sharable) {
+        if (sharable instanceof ProfiledSharable) {
+            return sharable;
+        }
+        ResourceContention contention = contentions.computeIfAbsent(name, ResourceContention::new);
+        return new ProfiledSharable<>(sharable, contention);
+    }
+
+    /**
+     * Returns what has been recorded for a resource
+     * @param name Name the resource was profiled under
+     * @return Returns what has been recorded for the resource, or null if nothing was profiled under that name
+     */
+    public ResourceContention get(String name) {
+        return name == null ? null : contentions.get(name);
+    }
+
+    /**
+     * Returns every profiled resource, the ones tasks spent the most time waiting on first and then the ones that
+     * turned away the most claims
+     * @return Returns every profiled resource, hottest first
+     */
+    public List<ResourceContention> getHotResources() {
+        // Rank on a snapshot since the counts keep moving while others are claiming
+        Map<ResourceContention, long[]> snapshot = new IdentityHashMap<>();
+        for (ResourceContention contention : contentions.values()) {
+            snapshot.put(contention, new long[] {contention.getWaitTime(), contention.getFailedClaims()});
+        }
+        List<ResourceContention> ranked = new ArrayList<>(snapshot.keySet());
+        ranked.sort((a, b) -> {
+            long[] first = snapshot.get(a);
+            long[] second = snapshot.get(b);
+            int compare = Long.compare(second[0], first[0]);
+            return compare != 0 ? compare : Long.compare(second[1], first[1]);
+        });
+        return ranked;
+    }
+
+    /**
+     * Creates a report with one line per profiled resource, hottest first
+     * @return Returns a multi-line report of the profiled resources
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        int rank = 1;
+        for (ResourceContention contention : getHotResources()) {
+            sb.append(rank++).append(". ").append(contention).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return report();
+    }
+}
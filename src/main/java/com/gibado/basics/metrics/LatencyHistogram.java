@@ -0,0 +1,156 @@
+package com.gibado.basics.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts nanosecond latencies in a fixed set of buckets so any number of them can be recorded without locking or
+ * growing.  Every power of two is split into {@link #SUB_BUCKETS} equal buckets, which keeps any reported percentile
+ * within about 6% of the value actually recorded.
+ */
+public final class LatencyHistogram {
+    /** Number of bits that pick a bucket within a power of two */
+    private static final int SUB_BUCKET_BITS = 4;
+    /** Number of buckets each power of two is split into */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Enough buckets for any positive long */
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Adds a latency to the histogram
+     * @param nanos Nanoseconds to record, negative values are counted as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        total.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Returns how many latencies have been recorded
+     * @return Returns how many latencies have been recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the largest latency recorded
+     * @return Returns the largest latency recorded in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the average latency recorded
+     * @return Returns the average latency recorded in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : total.sum() / count;
+    }
+
+    /**
+     * Returns the latency that the given percent of the recorded latencies are at or below
+     * @param percentile Percent between 0 and 100, like 99.9
+     * @return Returns the highest value in the matching bucket in nanoseconds, never more than {@link #getMax()}, or 0
+     * if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        // Take one snapshot so the count and the buckets agree even while others are recording
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestInBucket(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the median latency
+     * @return Returns the median latency in nanoseconds
+     */
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    /**
+     * Returns the 99th percentile latency
+     * @return Returns the 99th percentile latency in nanoseconds
+     */
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    /**
+     * Returns the 99.9th percentile latency
+     * @return Returns the 99.9th percentile latency in nanoseconds
+     */
+    public long getP999() {
+        return getPercentile(99.9);
+    }
+
+    /**
+     * Returns the bucket a value is counted in
+     * @param value Non-negative value
+     * @return Returns the index of the bucket holding the value
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Returns the highest value counted in a bucket
+     * @param bucket Index of the bucket
+     * @return Returns the highest value counted in the bucket
+     */
+    static long highestInBucket(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + " p50=" + micros(getP50()) + " p99=" + micros(getP99())
+                + " p999=" + micros(getP999()) + " max=" + micros(getMax());
+    }
+
+    private static String micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+    }
+}
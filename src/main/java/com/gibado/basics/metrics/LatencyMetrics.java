@@ -0,0 +1,67 @@
+package com.gibado.basics.metrics;
+
+import com.gibado.basics.workunit.ITaskRunner;
+import com.gibado.basics.workunit.TaskTimes;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collects {@link TaskLatency} by task name across every run a plant makes.  Each name keeps a fixed amount of memory
+ * no matter how many times it runs.
+ */
+public class LatencyMetrics {
+    private final ConcurrentMap<String, TaskLatency> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the times of an {@link ITaskRunner} that performed its task
+     * @param runner {@link ITaskRunner} that has finished its task
+     */
+    public void record(ITaskRunner runner) {
+        String name = runner.getName();
+        TaskTimes times = runner.getTimes();
+        if (name == null || times.getExecute() == TaskTimes.UNSET) {
+            return;
+        }
+        TaskLatency latency = latencies.get(name);
+        if (latency == null) {
+            latency = latencies.computeIfAbsent(name, TaskLatency::new);
+        }
+        latency.record(times);
+    }
+
+    /**
+     * Returns the latencies recorded for a task name
+     * @param name Name of the task
+     * @return Returns the latencies recorded for the task, or null if it has never been recorded
+     */
+    public TaskLatency get(String name) {
+        return name == null ? null : latencies.get(name);
+    }
+
+    /**
+     * Returns the names of every task that has been recorded
+     * @return Returns the names of every task that has been recorded
+     */
+    public Set<String> getTaskNames() {
+        return Collections.unmodifiableSet(latencies.keySet());
+    }
+
+    /**
+     * Forgets everything recorded so far
+     */
+    public void clear() {
+        latencies.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (TaskLatency latency : latencies.values()) {
+            sb.append(latency).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,135 @@
+package com.gibado.basics.metrics;
+
+import com.gibado.basics.sharable.ISharable;
+import com.gibado.basics.sharable.ReleaseWaiter;
+import com.gibado.basics.workunit.ITaskRunner;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Wraps an {@link ISharable} and records every claim made through it into a {@link ResourceContention}.  Everything
+ * else, including the claim order, is left to the wrapped {@link ISharable}.
+ * @param <T> Object type
+ */
+public class ProfiledSharable<T> implements ISharable<T> {
+    private final ISharable<T> sharable;
+    private final ResourceContention contention;
+    /** When each {@link ITaskRunner} was first turned away, until it gets its claim or finishes without one */
+    private final ConcurrentMap<ITaskRunner, Long> waitingSince = new ConcurrentHashMap<>();
+    /** When each {@link ITaskRunner} holding a claim that locks the resource got it */
+    private final ConcurrentMap<ITaskRunner, Long> heldSince = new ConcurrentHashMap<>();
+
+    ProfiledSharable(ISharable<T> sharable, ResourceContention contention) {
+        this.sharable = sharable;
+        this.contention = contention;
+    }
+
+    /**
+     * Returns the {@link ISharable} being profiled
+     * @return Returns the {@link ISharable} being profiled
+     */
+    public ISharable<T> getSharable() {
+        return sharable;
+    }
+
+    /**
+     * Returns what has been recorded for this resource
+     * @return Returns what has been recorded for this resource
+     */
+    public ResourceContention getContention() {
+        return contention;
+    }
+
+    @Override
+    public void assignValue(T value) {
+        sharable.assignValue(value);
+    }
+
+    @Override
+    public boolean isLocked() {
+        return sharable.isLocked();
+    }
+
+    @Override
+    public boolean isReadLocked() {
+        return sharable.isReadLocked();
+    }
+
+    @Override
+    public T claim(ITaskRunner runner) {
+        return recordClaim(runner, sharable.claim(runner));
+    }
+
+    @Override
+    public T claimRead(ITaskRunner runner) {
+        return recordClaim(runner, sharable.claimRead(runner));
+    }
+
+    @Override
+    public void release(ITaskRunner runner) {
+        Long since = runner == null ? null : heldSince.remove(runner);
+        sharable.release(runner);
+        if (since != null) {
+            contention.recordHold(System.nanoTime() - since);
+        }
+    }
+
+    @Override
+    public void awaitRelease(ReleaseWaiter waiter) {
+        sharable.awaitRelease(waiter);
+    }
+
+    @Override
+    public long getClaimOrder() {
+        return sharable.getClaimOrder();
+    }
+
+    /**
+     * Returns how many {@link ITaskRunner}s have been turned away and are still waiting for a claim
+     * @return Returns how many {@link ITaskRunner}s are waiting for a claim
+     */
+    public int getWaiting() {
+        return waitingSince.size();
+    }
+
+    /**
+     * Returns how many {@link ITaskRunner}s are holding a claim that locks this resource
+     * @return Returns how many {@link ITaskRunner}s are holding a claim
+     */
+    public int getHolding() {
+        return heldSince.size();
+    }
+
+    /**
+     * Records the outcome of a claim
+     * @param runner {@link ITaskRunner} that tried to claim this resource
+     * @param value Value the claim returned, null if it was turned away
+     * @return Returns the given value
+     */
+    private T recordClaim(ITaskRunner runner, T value) {
+        contention.recordClaim(value != null);
+        if (runner != null) {
+            long now = System.nanoTime();
+            if (value != null) {
+                if (sharable.isLocked()) {
+                    // A claim that locks nothing, like on a ReadOnlySharable, is never released so it has no hold time
+                    heldSince.put(runner, now);
+                }
+                Long since = waitingSince.remove(runner);
+                if (since != null) {
+                    contention.recordWait(runner.getName(), now - since);
+                }
+            } else if (waitingSince.putIfAbsent(runner, now) == null) {
+                // A runner that times out or fails never gets its claim, so forget it once it is done either way
+                runner.getCompletion().whenComplete((finished, error) -> waitingSince.remove(runner));
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return sharable.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package com.gibado.basics.metrics;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How much one profiled {@link com.gibado.basics.sharable.ISharable} was fought over.  Every count only grows, and
+ * nothing is locked while recording.
+ */
+public final class ResourceContention {
+    private final String name;
+    private final LongAdder claimAttempts = new LongAdder();
+    private final LongAdder failedClaims = new LongAdder();
+    private final LongAdder holdTime = new LongAdder();
+    private final AtomicLong maxHoldTime = new AtomicLong();
+    private final LongAdder waitTime = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> waitTimeByTask = new ConcurrentHashMap<>();
+
+    ResourceContention(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Counts an attempt to claim the resource
+     * @param succeeded True if the claim was granted
+     */
+    void recordClaim(boolean succeeded) {
+        claimAttempts.increment();
+        if (!succeeded) {
+            failedClaims.increment();
+        }
+    }
+
+    /**
+     * Adds the time a claim was held once it is released
+     * @param nanos Nanoseconds between the claim and its release
+     */
+    void recordHold(long nanos) {
+        holdTime.add(nanos);
+        long current = maxHoldTime.get();
+        while (nanos > current && !maxHoldTime.compareAndSet(current, nanos)) {
+            current = maxHoldTime.get();
+        }
+    }
+
+    /**
+     * Adds the time a task spent between its first failed claim and the claim that was granted
+     * @param taskName Name of the task that waited
+     * @param nanos Nanoseconds the task waited
+     */
+    void recordWait(String taskName, long nanos) {
+        waitTime.add(nanos);
+        String key = taskName == null ? "" : taskName;
+        LongAdder taskWait = waitTimeByTask.get(key);
+        if (taskWait == null) {
+            taskWait = waitTimeByTask.computeIfAbsent(key, k -> new LongAdder());
+        }
+        taskWait.add(nanos);
+    }
+
+    /**
+     * Returns the name the resource was profiled under
+     * @return Returns the name the resource was profiled under
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns how many times the resource was claimed or tried to be claimed
+     * @return Returns how many times the resource was claimed or tried to be claimed
+     */
+    public long getClaimAttempts() {
+        return claimAttempts.sum();
+    }
+
+    /**
+     * Returns how many claims were turned away because the resource was locked
+     * @return Returns how many claims were turned away because the resource was locked
+     */
+    public long getFailedClaims() {
+        return failedClaims.sum();
+    }
+
+    /**
+     * Returns the total time the resource was held, adding up overlapping reads
+     * @return Returns the total time the resource was held in nanoseconds
+     */
+    public long getHoldTime() {
+        return holdTime.sum();
+    }
+
+    /**
+     * Returns the longest time a single claim held the resource
+     * @return Returns the longest time a single claim held the resource in nanoseconds
+     */
+    public long getMaxHoldTime() {
+        return maxHoldTime.get();
+    }
+
+    /**
+     * Returns the total time tasks spent waiting for the resource
+     * @return Returns the total time tasks spent waiting for the resource in nanoseconds
+     */
+    public long getWaitTime() {
+        return waitTime.sum();
+    }
+
+    /**
+     * Returns the names of the tasks that waited on the resource the longest, longest first
+     * @param limit Most task names to return
+     * @return Returns the names of the tasks that waited on the resource the longest
+     */
+    public List<String> getTopWaiters(int limit) {
+        // Rank on a snapshot since the times keep moving while others are waiting
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(waitTimeByTask.size());
+        for (Map.Entry<String, LongAdder> entry : waitTimeByTask.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum()));
+        }
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        List<String> names = new ArrayList<>(Math.min(limit, entries.size()));
+        for (int i = 0; i < entries.size() && i < limit; i++) {
+            names.add(entries.get(i).getKey());
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Returns the total time the given task spent waiting for the resource
+     * @param taskName Name of the task
+     * @return Returns the total time the task spent waiting for the resource in nanoseconds
+     */
+    public long getWaitTime(String taskName) {
+        LongAdder taskWait = waitTimeByTask.get(taskName == null ? "" : taskName);
+        return taskWait == null ? 0 : taskWait.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": wait=" + millis(getWaitTime()) + " failed=" + getFailedClaims() + "/" + getClaimAttempts()
+                + " hold=" + millis(getHoldTime()) + " maxHold=" + millis(getMaxHoldTime())
+                + " topWaiters=" + getTopWaiters(3);
+    }
+
+    private static String millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos) + "ms";
+    }
+}
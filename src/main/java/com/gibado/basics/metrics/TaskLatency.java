@@ -0,0 +1,66 @@
+package com.gibado.basics.metrics;
+
+import com.gibado.basics.workunit.TaskTimes;
+
+/**
+ * Where the time went for every run of one task name, split into the wait for a thread, the wait for resources and
+ * the task itself
+ */
+public final class TaskLatency {
+    private final String name;
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram resourceWait = new LatencyHistogram();
+    private final LatencyHistogram execute = new LatencyHistogram();
+
+    TaskLatency(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Adds one run of the task
+     * @param times Readings taken during a run that performed the task
+     */
+    void record(TaskTimes times) {
+        queueWait.record(times.getQueueWait());
+        resourceWait.record(times.getResourceWait());
+        execute.record(times.getExecute());
+    }
+
+    /**
+     * Returns the name of the task
+     * @return Returns the name of the task
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the time spent waiting for a thread once the resources were claimed
+     * @return Returns the time spent waiting for a thread once the resources were claimed
+     */
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * Returns the time spent waiting for locked resources
+     * @return Returns the time spent waiting for locked resources
+     */
+    public LatencyHistogram getResourceWait() {
+        return resourceWait;
+    }
+
+    /**
+     * Returns the time spent performing the task
+     * @return Returns the time spent performing the task
+     */
+    public LatencyHistogram getExecute() {
+        return execute;
+    }
+
+    @Override
+    public String toString() {
+        return name + "\n  queue wait:    " + queueWait + "\n  resource wait: " + resourceWait
+                + "\n  execute:       " + execute;
+    }
+}
@@ -0,0 +1,281 @@
+package com.gibado.basics.metrics;
+
+import com.gibado.basics.workunit.ITaskRunner;
+import com.gibado.basics.workunit.State;
+import com.gibado.basics.workunit.TaskTimes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams a timeline of finished {@link ITaskRunner}s as Chrome trace-event JSON, which can be opened in
+ * chrome://tracing or Perfetto.  Each task is drawn on the thread that ran it, and the time it spent waiting for
+ * resources and for a thread is drawn as async spans under the task's name.
+ * <p>
+ * Recording only puts an event on a bounded queue that a single background thread writes out, so tasks never wait on
+ * the {@link Writer}.  If the queue is full the event is dropped and counted in {@link #getDropped()}.
+ */
+public class TraceRecorder implements Closeable {
+    /** Events kept waiting to be written when no buffer size is given */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    /** Trace-event process id every event is reported under */
+    private static final int PID = 1;
+
+    private final Writer out;
+    private final BlockingQueue<Event> buffer;
+    private final long baseNanos = System.nanoTime();
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Set<Long> namedThreads = ConcurrentHashMap.newKeySet();
+    private final Thread writerThread;
+    private volatile boolean closed;
+    private boolean firstEvent = true;
+    private IOException writeError;
+
+    /**
+     * Creates a recorder that writes to the given {@link Writer} with the {@link #DEFAULT_BUFFER_SIZE}
+     * @param out Where the trace JSON is written
+     */
+    public TraceRecorder(Writer out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a recorder that writes to the given {@link Writer}
+     * @param out Where the trace JSON is written
+     * @param bufferSize Most events kept waiting to be written before new ones are dropped
+     */
+    public TraceRecorder(Writer out, int bufferSize) {
+        this.out = out;
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        this.writerThread = new Thread(this::drain, "ProcessPlant trace writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Records an {@link ITaskRunner} that is no longer processing.  It is drawn on the thread that picked it up, which
+     * may not be the one recording it, like when spawned work finishes it.  An {@link ITaskRunner} that never got a
+     * thread, like one whose dependent failed, isn't recorded.
+     * @param runner {@link ITaskRunner} that has finished
+     */
+    public void record(ITaskRunner runner) {
+        TaskTimes times = runner.getTimes();
+        if (closed || times.getStarted() == TaskTimes.UNSET) {
+            return;
+        }
+        long threadId = times.getThreadId();
+        // The first event from each thread also names it
+        String threadName = namedThreads.add(threadId) ? times.getThreadName() : null;
+        Event event = new Event(runner.getName(), runner.getState(), threadId, threadName,
+                nextId.getAndIncrement(), times.getReady(), times.getQueued(), times.getStarted(), times.getExecuted(),
+                times.getEnded());
+        if (!buffer.offer(event)) {
+            dropped.incrementAndGet();
+            if (threadName != null) {
+                namedThreads.remove(threadId);
+            }
+        }
+    }
+
+    /**
+     * Returns how many events were dropped because the buffer was full
+     * @return Returns how many events were dropped because the buffer was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes every buffered event, ends the JSON array and closes the {@link Writer}.  Nothing is recorded afterwards.
+     * @throws IOException if writing the trace failed at any point
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IOException error = writeError;
+        try {
+            if (error == null) {
+                // The opening bracket was written by the writer thread before any event
+                out.write(firstEvent ? "]\n" : "\n]\n");
+            }
+        } finally {
+            out.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Writes events as they come in until the recorder is closed and the buffer is empty
+     */
+    private void drain() {
+        try {
+            out.write('[');
+            while (!closed || !buffer.isEmpty()) {
+                Event event = buffer.poll(50, TimeUnit.MILLISECONDS);
+                if (event == null) {
+                    out.flush();
+                } else {
+                    write(event);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            writeError = e;
+            // Stop taking events that can't be written
+            closed = true;
+            buffer.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the trace events for one {@link ITaskRunner}
+     * @param event Readings taken from the {@link ITaskRunner}
+     * @throws IOException if the {@link Writer} fails
+     */
+    private void write(Event event) throws IOException {
+        if (event.threadName != null) {
+            StringBuilder sb = begin("thread_name", "M", event.threadId);
+            sb.append(",\"args\":{\"name\":");
+            appendString(sb, event.threadName);
+            writeEvent(sb.append("}}"));
+        }
+        if (event.ready != TaskTimes.UNSET && event.queued != TaskTimes.UNSET && event.queued > event.ready) {
+            writeSpan(event, "resource", event.ready, event.queued);
+        }
+        if (event.queued != TaskTimes.UNSET && event.started > event.queued) {
+            writeSpan(event, "queue", event.queued, event.started);
+        }
+        long start = event.executed == TaskTimes.UNSET ? event.started : event.executed;
+        long end = event.ended == TaskTimes.UNSET ? start : event.ended;
+        StringBuilder sb = begin(event.name, "X", event.threadId);
+        sb.append(",\"cat\":\"task\",\"ts\":");
+        appendTimestamp(sb, start);
+        sb.append(",\"dur\":");
+        appendMicros(sb, end - start);
+        sb.append(",\"args\":{\"state\":\"").append(event.state).append('"');
+        if (event.ready != TaskTimes.UNSET) {
+            sb.append(",\"ready\":");
+            appendTimestamp(sb, event.ready);
+        }
+        writeEvent(sb.append("}}"));
+    }
+
+    /**
+     * Writes a wait as a pair of async events so waits that overlap get their own rows
+     * @param event Readings taken from the {@link ITaskRunner}
+     * @param category What was being waited for
+     * @param from When the wait started
+     * @param to When the wait ended
+     * @throws IOException if the {@link Writer} fails
+     */
+    private void writeSpan(Event event, String category, long from, long to) throws IOException {
+        for (int i = 0; i < 2; i++) {
+            StringBuilder sb = begin(event.name, i == 0 ? "b" : "e", event.threadId);
+            sb.append(",\"cat\":\"").append(category).append("\",\"id\":").append(event.id).append(",\"ts\":");
+            appendTimestamp(sb, i == 0 ? from : to);
+            writeEvent(sb.append('}'));
+        }
+    }
+
+    private StringBuilder begin(String name, String phase, long threadId) {
+        StringBuilder sb = new StringBuilder(160).append("{\"name\":");
+        appendString(sb, name);
+        return sb.append(",\"ph\":\"").append(phase).append("\",\"pid\":").append(PID).append(",\"tid\":").append(threadId);
+    }
+
+    private void writeEvent(StringBuilder event) throws IOException {
+        if (!firstEvent) {
+            out.write(",\n");
+        } else {
+            out.write('\n');
+            firstEvent = false;
+        }
+        out.write(event.toString());
+    }
+
+    /**
+     * Appends a {@link System#nanoTime()} reading as microseconds since this recorder was created
+     */
+    private void appendTimestamp(StringBuilder sb, long nanoTime) {
+        appendMicros(sb, nanoTime - baseNanos);
+    }
+
+    /**
+     * Appends nanoseconds as microseconds with the nanoseconds kept as a fraction
+     */
+    private static void appendMicros(StringBuilder sb, long duration) {
+        long nanos = Math.max(0, duration);
+        sb.append(nanos / 1000).append('.');
+        long fraction = nanos % 1000;
+        if (fraction < 100) {
+            sb.append('0');
+        }
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+
+    private static void appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        String text = value == null ? "" : value;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * The readings of one finished {@link ITaskRunner}, copied so they can be written later
+     */
+    private static final class Event {
+        private final String name;
+        private final State state;
+        private final long threadId;
+        private final String threadName;
+        private final long id;
+        private final long ready;
+        private final long queued;
+        private final long started;
+        private final long executed;
+        private final long ended;
+
+        private Event(String name, State state, long threadId, String threadName, long id,
+                      long ready, long queued, long started, long executed, long ended) {
+            this.name = name;
+            this.state = state;
+            this.threadId = threadId;
+            this.threadName = threadName;
+            this.id = id;
+            this.ready = ready;
+            this.queued = queued;
+            this.started = started;
+            this.executed = executed;
+            this.ended = ended;
+        }
+    }
+}
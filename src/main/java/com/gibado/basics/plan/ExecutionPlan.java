@@ -0,0 +1,229 @@
+package com.gibado.basics.plan;
+
+import com.gibado.basics.IProcessPlant;
+import com.gibado.basics.sharable.ISharable;
+import com.gibado.basics.workunit.GraphHelper;
+import com.gibado.basics.workunit.ITask;
+import com.gibado.basics.workunit.ITaskRunner;
+import com.gibado.basics.workunit.ResourceSlots;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An {@link ITask} graph converted once into flat arrays so it can be run any number of times, even at the same time,
+ * without being converted again.  Nodes are numbered with the root as 0, and every node before the nodes it depends
+ * on, and the graph is held as arrays of node numbers.  Every node's {@link ISharable} resources are looked up when the
+ * plan is compiled, so changes to the resource map afterwards are not seen by the plan.
+ */
+public final class ExecutionPlan {
+    private final ITask[] tasks;
+    private final int[][] dependents;
+    private final int[][] parents;
+    private final int[] leaves;
+    private final ResourceSlots[] resourceSlots;
+    private final Map<String, ISharable<?>>[] requiredMaps;
+    private final Set<String>[] readResourceKeys;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ExecutionPlan(List<ITask> tasks, List<List<Integer>> dependents, Map<String, ISharable<?>> resourceMap) {
+        int size = tasks.size();
+        this.tasks = tasks.toArray(new ITask[size]);
+        this.dependents = new int[size][];
+        this.parents = new int[size][];
+        this.resourceSlots = new ResourceSlots[size];
+        this.requiredMaps = new Map[size];
+        this.readResourceKeys = new Set[size];
+
+        int[] parentCounts = new int[size];
+        int leafCount = 0;
+        for (int node = 0; node < size; node++) {
+            this.dependents[node] = toArray(dependents.get(node));
+            for (int dependent : this.dependents[node]) {
+                parentCounts[dependent]++;
+            }
+            if (this.dependents[node].length == 0) {
+                leafCount++;
+            }
+        }
+        this.leaves = new int[leafCount];
+        for (int node = 0, leaf = 0; node < size; node++) {
+            this.parents[node] = new int[parentCounts[node]];
+            if (this.dependents[node].length == 0) {
+                this.leaves[leaf++] = node;
+            }
+        }
+        int[] filled = new int[size];
+        for (int node = 0; node < size; node++) {
+            for (int dependent : this.dependents[node]) {
+                this.parents[dependent][filled[dependent]++] = node;
+            }
+            resolveResources(node, resourceMap);
+        }
+    }
+
+    /**
+     * Converts an {@link ITask} graph into a plan.  An {@link ITask} that is a dependent of more than one {@link ITask}
+     * becomes a single node with several parents.  The graph is walked without recursion and checked for cycles, in
+     * time linear in its tasks and dependencies.
+     * @param root {@link ITask} to be performed last
+     * @param resourceMap {@link ISharable} resources the tasks' resource keys refer to
+     * @return Returns a plan that can be run over and over
+     * @throws IllegalArgumentException if a task needs a resource key that isn't in the resource map, or the graph has
+     * a cycle
+     */
+    public static ExecutionPlan compile(ITask root, Map<String, ISharable<?>> resourceMap) {
+        List<ITask> order = GraphHelper.dependencyOrder(root);
+        int size = order.size();
+        // Number backwards so the root is 0 and every node comes before the nodes it depends on
+        List<ITask> tasks = new ArrayList<>(size);
+        Map<ITask, Integer> numbered = new IdentityHashMap<>(size);
+        for (int i = size - 1; i >= 0; i--) {
+            numbered.put(order.get(i), tasks.size());
+            tasks.add(order.get(i));
+        }
+        List<List<Integer>> dependents = new ArrayList<>(size);
+        int[] listedBy = new int[size];
+        Arrays.fill(listedBy, -1);
+        for (int node = 0; node < size; node++) {
+            List<Integer> nodeDependents = new ArrayList<>();
+            Collection<ITask> taskDependents = tasks.get(node).getDependents();
+            if (taskDependents != null) {
+                for (ITask dependent : taskDependents) {
+                    if (dependent == null) {
+                        continue;
+                    }
+                    int dependentNode = numbered.get(dependent);
+                    // The same task listed twice is only waited on once
+                    if (listedBy[dependentNode] != node) {
+                        listedBy[dependentNode] = node;
+                        nodeDependents.add(dependentNode);
+                    }
+                }
+            }
+            dependents.add(nodeDependents);
+        }
+        return new ExecutionPlan(tasks, dependents, resourceMap == null ? Collections.emptyMap() : resourceMap);
+    }
+
+    /**
+     * Looks up the {@link ISharable}s a node needs and lays them out in claim order slots
+     * @param node Node number
+     * @param resourceMap {@link ISharable} resources by key
+     */
+    private void resolveResources(int node, Map<String, ISharable<?>> resourceMap) {
+        Map<String, ISharable<?>> required = new LinkedHashMap<>();
+        Collection<String> keys = tasks[node].getResourceKeys();
+        if (keys != null) {
+            for (String key : keys) {
+                ISharable<?> resource = resourceMap.get(key);
+                if (resource == null) {
+                    throw new IllegalArgumentException(tasks[node].getName() + " needs a resource that hasn't been added: " + key);
+                }
+                required.put(key, resource);
+            }
+        }
+        Set<String> readKeys = new HashSet<>(tasks[node].getReadResourceKeys());
+        readKeys.retainAll(required.keySet());
+        resourceSlots[node] = ResourceSlots.of(required, readKeys);
+        requiredMaps[node] = Collections.unmodifiableMap(required);
+        readResourceKeys[node] = Collections.unmodifiableSet(readKeys);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Creates the state for one run of this plan.  Nothing starts until the run is submitted to an {@link IProcessPlant}.
+     * @param processPlant {@link IProcessPlant} that will process the run
+     * @return Returns a new run of this plan
+     */
+    public PlanRun newRun(IProcessPlant processPlant) {
+        return new PlanRun(this, processPlant);
+    }
+
+    /**
+     * Returns the number of nodes in this plan
+     * @return Returns the number of nodes in this plan
+     */
+    public int size() {
+        return tasks.length;
+    }
+
+    /**
+     * Returns the {@link ITask} of a node
+     * @param node Node number
+     * @return Returns the {@link ITask} of a node
+     */
+    public ITask getTask(int node) {
+        return tasks[node];
+    }
+
+    /**
+     * Returns the node numbers a node depends on
+     * @param node Node number
+     * @return Returns a copy of the node numbers that have to finish before the node can start
+     */
+    public int[] getDependents(int node) {
+        return dependents[node].clone();
+    }
+
+    /**
+     * Returns the node numbers that depend on a node
+     * @param node Node number
+     * @return Returns a copy of the node numbers waiting on the node
+     */
+    public int[] getParents(int node) {
+        return parents[node].clone();
+    }
+
+    /**
+     * Returns the resource keys of a node in the order its {@link ISharable}s are claimed
+     * @param node Node number
+     * @return Returns a copy of the resource keys of the node
+     */
+    public String[] getResourceKeys(int node) {
+        String[] keys = new String[resourceSlots[node].size()];
+        for (int slot = 0; slot < keys.length; slot++) {
+            keys[slot] = resourceSlots[node].getKey(slot);
+        }
+        return keys;
+    }
+
+    int[] dependents(int node) {
+        return dependents[node];
+    }
+
+    int[] parents(int node) {
+        return parents[node];
+    }
+
+    int[] leaves() {
+        return leaves;
+    }
+
+    ResourceSlots resourceSlots(int node) {
+        return resourceSlots[node];
+    }
+
+    Map<String, ISharable<?>> requiredMap(int node) {
+        return requiredMaps[node];
+    }
+
+    Set<String> readResourceKeys(int node) {
+        return readResourceKeys[node];
+    }
+}
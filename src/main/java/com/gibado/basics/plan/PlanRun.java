@@ -0,0 +1,77 @@
+package com.gibado.basics.plan;
+
+import com.gibado.basics.IProcessPlant;
+import com.gibado.basics.workunit.ITaskRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One run of an {@link ExecutionPlan}.  The only things created per run are one small {@link ITaskRunner} for each
+ * node, everything else is read from the plan.
+ */
+public final class PlanRun {
+    private final ExecutionPlan plan;
+    private final IProcessPlant processPlant;
+    private final PlanRunner[] runners;
+
+    PlanRun(ExecutionPlan plan, IProcessPlant processPlant) {
+        this.plan = plan;
+        this.processPlant = processPlant;
+        this.runners = new PlanRunner[plan.size()];
+        for (int node = 0; node < runners.length; node++) {
+            runners[node] = new PlanRunner(this, node);
+            runners[node].setPendingDependents(plan.dependents(node).length);
+        }
+    }
+
+    /**
+     * Returns the {@link ITaskRunner} of the root node, which finishes last
+     * @return Returns the {@link ITaskRunner} of the root node
+     */
+    public ITaskRunner getRoot() {
+        return runners[0];
+    }
+
+    /**
+     * Returns the {@link ITaskRunner} of a node
+     * @param node Node number
+     * @return Returns the {@link ITaskRunner} of a node
+     */
+    public ITaskRunner getRunner(int node) {
+        return runners[node];
+    }
+
+    /**
+     * Returns the {@link ITaskRunner}s of every node, in node number order
+     * @return Returns the {@link ITaskRunner}s of every node
+     */
+    public List<ITaskRunner> getRunners() {
+        return Collections.unmodifiableList(Arrays.<ITaskRunner>asList(runners));
+    }
+
+    /**
+     * Returns the {@link ITaskRunner}s of the nodes that don't depend on anything, which are the ones to start with
+     * @return Returns the {@link ITaskRunner}s that can start right away
+     */
+    public List<ITaskRunner> getLeaves() {
+        return new RunnerList(runners, plan.leaves());
+    }
+
+    /**
+     * Returns the plan this is a run of
+     * @return Returns the plan this is a run of
+     */
+    public ExecutionPlan getPlan() {
+        return plan;
+    }
+
+    IProcessPlant getProcessPlant() {
+        return processPlant;
+    }
+
+    PlanRunner[] runners() {
+        return runners;
+    }
+}
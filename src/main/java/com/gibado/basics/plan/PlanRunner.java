@@ -0,0 +1,306 @@
+package com.gibado.basics.plan;
+
+import com.gibado.basics.IProcessPlant;
+import com.gibado.basics.scheduling.FairShare;
+import com.gibado.basics.sharable.ISharable;
+import com.gibado.basics.workunit.ITask;
+import com.gibado.basics.workunit.ITaskRunner;
+import com.gibado.basics.workunit.ResourceSlots;
+import com.gibado.basics.workunit.State;
+import com.gibado.basics.workunit.TaskTimes;
+import com.gibado.basics.workunit.WorkUnitHelper;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * The {@link ITaskRunner} of one node in one {@link PlanRun}.  Only what changes while running is kept here, the
+ * {@link ITask}, its resources and the graph are read from the {@link ExecutionPlan}, which can't be changed.
+ */
+final class PlanRunner implements ITaskRunner {
+    private static final AtomicReferenceFieldUpdater<PlanRunner, State> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(PlanRunner.class, State.class, "state");
+    private static final AtomicIntegerFieldUpdater<PlanRunner> PENDING =
+            AtomicIntegerFieldUpdater.newUpdater(PlanRunner.class, "pendingDependents");
+
+    private final PlanRun run;
+    private final int node;
+    private volatile State state = State.READY;
+    private volatile int pendingDependents;
+    private final CompletableFuture<ITaskRunner> completion = new CompletableFuture<>();
+    private volatile Map<String, Object> claimedParams;
+    private volatile long criticalPathLength;
+    private volatile FairShare fairShare;
+    private Instant startTime;
+    private long timeout = 60000; // 1 minute
+    private long taskTime = -1;
+    private long totalTime = -1;
+    private final TaskTimes times = new TaskTimes();
+    private Exception exceptionThrown;
+    private volatile Object output;
+    private List<ITaskRunner> dependents;
+    private List<ITaskRunner> parents;
+
+    PlanRunner(PlanRun run, int node) {
+        this.run = run;
+        this.node = node;
+    }
+
+    private ITask getTask() {
+        return run.getPlan().getTask(node);
+    }
+
+    @Override
+    public void run() {
+        WorkUnitHelper.runLogic(this);
+    }
+
+    @Override
+    public String getName() {
+        return getTask().getName();
+    }
+
+    @Override
+    public void performTask(Map<String, ?> params) {
+        Object output = getTask().performTask(params, WorkUnitHelper.getInputs(this, Object.class));
+        if (output != null) {
+            setOutput(output);
+        }
+    }
+
+    @Override
+    public void exceptionHandling(Exception exception, Map<String, ?> params) {
+        getTask().exceptionHandling(exception, params);
+    }
+
+    @Override
+    public Collection<String> getResourceKeys() {
+        return Arrays.asList(run.getPlan().getResourceKeys(node));
+    }
+
+    @Override
+    public State getState() {
+        return state;
+    }
+
+    @Override
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    @Override
+    public boolean compareAndSetState(State expect, State update) {
+        return STATE.compareAndSet(this, expect, update);
+    }
+
+    @Override
+    public Instant getStartTime() {
+        return startTime;
+    }
+
+    @Override
+    public void setStartTime(Instant now) {
+        this.startTime = now;
+    }
+
+    @Override
+    public long getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public void setTimeout(long milliseconds) {
+        this.timeout = milliseconds;
+    }
+
+    @Override
+    public long getTaskTime() {
+        return taskTime;
+    }
+
+    @Override
+    public void setTaskTime(long taskTime) {
+        this.taskTime = taskTime;
+    }
+
+    @Override
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    @Override
+    public void setTotalTime(long totalTime) {
+        this.totalTime = totalTime;
+    }
+
+    @Override
+    public TaskTimes getTimes() {
+        return times;
+    }
+
+    @Override
+    public Object getOutput() {
+        return output;
+    }
+
+    @Override
+    public void setOutput(Object output) {
+        WorkUnitHelper.verifyOutput(this, output);
+        this.output = output;
+    }
+
+    @Override
+    public Exception getExceptionThrown() {
+        return exceptionThrown;
+    }
+
+    @Override
+    public void setExceptionThrown(Exception e) {
+        this.exceptionThrown = e;
+    }
+
+    @Override
+    public void addAllResources(Map<String, ISharable<?>> resourceMap) {
+        throw new UnsupportedOperationException("Resources of a compiled plan can't be changed");
+    }
+
+    @Override
+    public void addResource(String key, ISharable<?> resource) {
+        throw new UnsupportedOperationException("Resources of a compiled plan can't be changed");
+    }
+
+    @Override
+    public void addReadResource(String key, ISharable<?> resource) {
+        throw new UnsupportedOperationException("Resources of a compiled plan can't be changed");
+    }
+
+    @Override
+    public Collection<String> getReadResourceKeys() {
+        return run.getPlan().readResourceKeys(node);
+    }
+
+    @Override
+    public Map<String, ISharable<?>> getRequiredMap() {
+        return run.getPlan().requiredMap(node);
+    }
+
+    @Override
+    public ResourceSlots getResourceSlots() {
+        return run.getPlan().resourceSlots(node);
+    }
+
+    @Override
+    public Map<String, Object> getClaimedParams() {
+        return claimedParams;
+    }
+
+    @Override
+    public void setClaimedParams(Map<String, Object> claimedParams) {
+        this.claimedParams = claimedParams;
+    }
+
+    @Override
+    public Collection<ITaskRunner> getDependents() {
+        if (dependents == null) {
+            dependents = new RunnerList(run.runners(), run.getPlan().dependents(node));
+        }
+        return dependents;
+    }
+
+    @Override
+    public void setDependents(ITaskRunner... dependents) {
+        throw new UnsupportedOperationException("The graph of a compiled plan can't be changed");
+    }
+
+    @Override
+    public void setDependents(Collection<ITaskRunner> dependents) {
+        throw new UnsupportedOperationException("The graph of a compiled plan can't be changed");
+    }
+
+    @Override
+    public int getPendingDependents() {
+        return pendingDependents;
+    }
+
+    @Override
+    public void setPendingDependents(int count) {
+        this.pendingDependents = count;
+    }
+
+    @Override
+    public int decrementPendingDependents() {
+        return PENDING.decrementAndGet(this);
+    }
+
+    @Override
+    public long getCriticalPathLength() {
+        return criticalPathLength;
+    }
+
+    @Override
+    public void setCriticalPathLength(long criticalPathLength) {
+        this.criticalPathLength = criticalPathLength;
+    }
+
+    @Override
+    public ITaskRunner getParent() {
+        Collection<ITaskRunner> parents = getParents();
+        return parents.isEmpty() ? null : parents.iterator().next();
+    }
+
+    @Override
+    public void setParent(ITaskRunner parent) {
+        throw new UnsupportedOperationException("The graph of a compiled plan can't be changed");
+    }
+
+    @Override
+    public Collection<ITaskRunner> getParents() {
+        if (parents == null) {
+            parents = new RunnerList(run.runners(), run.getPlan().parents(node));
+        }
+        return parents;
+    }
+
+    @Override
+    public void addParent(ITaskRunner parent) {
+        throw new UnsupportedOperationException("The graph of a compiled plan can't be changed");
+    }
+
+    @Override
+    public FairShare getFairShare() {
+        return fairShare;
+    }
+
+    @Override
+    public void setFairShare(FairShare fairShare) {
+        this.fairShare = fairShare;
+    }
+
+    @Override
+    public CompletableFuture<ITaskRunner> getCompletion() {
+        return completion;
+    }
+
+    @Override
+    public IProcessPlant getProcessPlant() {
+        return run.getProcessPlant();
+    }
+
+    @Override
+    public void setProcessPlant(IProcessPlant processPlant) {
+        if (processPlant != run.getProcessPlant()) {
+            throw new UnsupportedOperationException("A plan run belongs to the plant it was created for");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " - " + state;
+    }
+}
@@ -0,0 +1,29 @@
+package com.gibado.basics.plan;
+
+import com.gibado.basics.workunit.ITaskRunner;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read only view of the {@link ITaskRunner}s of a run at the given node numbers
+ */
+final class RunnerList extends AbstractList<ITaskRunner> implements RandomAccess {
+    private final ITaskRunner[] runners;
+    private final int[] nodes;
+
+    RunnerList(ITaskRunner[] runners, int[] nodes) {
+        this.runners = runners;
+        this.nodes = nodes;
+    }
+
+    @Override
+    public ITaskRunner get(int index) {
+        return runners[nodes[index]];
+    }
+
+    @Override
+    public int size() {
+        return nodes.length;
+    }
+}
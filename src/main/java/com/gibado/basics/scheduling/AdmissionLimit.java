@@ -0,0 +1,226 @@
+package com.gibado.basics.scheduling;
+
+import com.gibado.basics.workunit.ITaskRunner;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.gibado.basics.workunit.WorkUnitHelper.NO_TIMEOUT;
+
+/**
+ * Caps how much submitted work a plant takes on at once so producers that submit faster than the plant can keep up are
+ * slowed down instead of piling up work without limit.  Capacity is counted in whole graphs or in the
+ * {@link ITaskRunner}s they contain, and a graph holds its share until its root has finished.  What happens to a
+ * submission that doesn't fit is decided by the {@link Overflow} policy.
+ */
+public class AdmissionLimit {
+    /**
+     * What the capacity is counted in
+     */
+    public enum Unit {
+        /** Each submitted graph counts as one, however big it is */
+        GRAPHS,
+        /** Each {@link ITaskRunner} in a submitted graph counts as one.  A graph bigger than the capacity takes all of it. */
+        RUNNERS
+    }
+
+    /**
+     * What happens to a submission that doesn't fit
+     */
+    public enum Overflow {
+        /** The submitting thread waits for room, and the submission is rejected if none frees up in time */
+        BLOCK,
+        /** The submission is rejected right away */
+        REJECT,
+        /** The submitting thread processes the graph itself, which keeps it from submitting more in the meantime */
+        CALLER_RUNS
+    }
+
+    private final int capacity;
+    private final Unit unit;
+    private final Overflow overflow;
+    private final long timeout;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+
+    /**
+     * Creates a limit on the work a plant takes on at once
+     * @param capacity Most graphs or {@link ITaskRunner}s admitted at once
+     * @param unit What the capacity is counted in
+     * @param overflow What happens to a submission that doesn't fit
+     * @param timeout Milliseconds a {@link Overflow#BLOCK}ed submission waits for room, or {@link
+     *                com.gibado.basics.workunit.WorkUnitHelper#NO_TIMEOUT} to wait as long as it takes
+     */
+    public AdmissionLimit(int capacity, Unit unit, Overflow overflow, long timeout) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Admission capacity has to be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        this.unit = unit;
+        this.overflow = overflow;
+        this.timeout = timeout;
+        // Fair so blocked submissions are let in in the order they arrived
+        this.permits = new Semaphore(capacity, true);
+    }
+
+    /**
+     * Creates a limit that makes submitting threads wait for room
+     * @param capacity Most graphs or {@link ITaskRunner}s admitted at once
+     * @param unit What the capacity is counted in
+     * @param timeout Milliseconds to wait for room before rejecting, or
+     *                {@link com.gibado.basics.workunit.WorkUnitHelper#NO_TIMEOUT}
+     * @return Returns a limit with the {@link Overflow#BLOCK} policy
+     */
+    public static AdmissionLimit blocking(int capacity, Unit unit, long timeout) {
+        return new AdmissionLimit(capacity, unit, Overflow.BLOCK, timeout);
+    }
+
+    /**
+     * Creates a limit that rejects submissions that don't fit
+     * @param capacity Most graphs or {@link ITaskRunner}s admitted at once
+     * @param unit What the capacity is counted in
+     * @return Returns a limit with the {@link Overflow#REJECT} policy
+     */
+    public static AdmissionLimit rejecting(int capacity, Unit unit) {
+        return new AdmissionLimit(capacity, unit, Overflow.REJECT, 0);
+    }
+
+    /**
+     * Creates a limit that has submitting threads process the graphs that don't fit themselves
+     * @param capacity Most graphs or {@link ITaskRunner}s admitted at once
+     * @param unit What the capacity is counted in
+     * @return Returns a limit with the {@link Overflow#CALLER_RUNS} policy
+     */
+    public static AdmissionLimit callerRuns(int capacity, Unit unit) {
+        return new AdmissionLimit(capacity, unit, Overflow.CALLER_RUNS, 0);
+    }
+
+    /**
+     * Makes room for a graph that is about to be submitted, following the {@link Overflow} policy if there isn't any
+     * @param runners Number of {@link ITaskRunner}s in the graph
+     * @return Returns how much capacity the graph holds, to be handed to {@link #release(int)} once its root has
+     * finished, or 0 if the submitting thread has to process the graph itself
+     * @throws RejectedExecutionException if the graph is rejected
+     */
+    public int admit(int runners) {
+        int needed = unit == Unit.GRAPHS ? 1 : Math.max(1, Math.min(runners, capacity));
+        if (tryAdmit(needed)) {
+            return needed;
+        }
+        switch (overflow) {
+            case CALLER_RUNS:
+                callerRuns.increment();
+                return 0;
+            case BLOCK:
+                if (block(needed)) {
+                    return needed;
+                }
+                break;
+            default:
+                break;
+        }
+        rejected.increment();
+        throw new RejectedExecutionException("Plant is full: " + getDepth() + " of " + capacity + " "
+                + unit.name().toLowerCase() + " admitted");
+    }
+
+    /**
+     * Gives back the capacity a graph held
+     * @param held Capacity returned by {@link #admit(int)}
+     */
+    public void release(int held) {
+        if (held > 0) {
+            permits.release(held);
+        }
+    }
+
+    /**
+     * Takes room if there is some and no blocked submission is waiting ahead of this one.  The untimed tryAcquire would
+     * barge past waiting submissions even on a fair semaphore, so a timed one with no wait is used instead.
+     * @param needed Capacity the graph needs
+     * @return Returns true if room was taken
+     */
+    private boolean tryAdmit(int needed) {
+        try {
+            return permits.tryAcquire(needed, 0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // An interrupted submitter still gets room that is free, it just can't wait for any
+            Thread.currentThread().interrupt();
+            return permits.tryAcquire(needed);
+        }
+    }
+
+    /**
+     * Waits for room
+     * @param needed Capacity the graph needs
+     * @return Returns true if room was made before the timeout
+     */
+    private boolean block(int needed) {
+        waiting.incrementAndGet();
+        try {
+            if (timeout == NO_TIMEOUT) {
+                permits.acquire(needed);
+                return true;
+            }
+            return permits.tryAcquire(needed, timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns how much of the capacity is held by graphs that haven't finished
+     * @return Returns how many graphs or {@link ITaskRunner}s are admitted and not finished
+     */
+    public int getDepth() {
+        return capacity - permits.availablePermits();
+    }
+
+    /**
+     * Returns how many submitting threads are waiting for room
+     * @return Returns how many submitting threads are waiting for room
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * Returns how many submissions have been rejected
+     * @return Returns how many submissions have been rejected
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns how many graphs were processed by the thread that submitted them because there wasn't room
+     * @return Returns how many graphs were processed by the thread that submitted them
+     */
+    public long getCallerRuns() {
+        return callerRuns.sum();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Unit getUnit() {
+        return unit;
+    }
+
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+}
@@ -0,0 +1,42 @@
+package com.gibado.basics.scheduling;
+
+import com.gibado.basics.workunit.ITaskRunner;
+
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+/**
+ * Helper class for ordering {@link ITaskRunner}s by how much work is still waiting on them
+ */
+public class CriticalPathHelper {
+    /** Puts the {@link ITaskRunner} with the longest remaining critical path first */
+    public static final Comparator<ITaskRunner> LONGEST_PATH_FIRST =
+            Comparator.comparingLong(ITaskRunner::getCriticalPathLength).reversed();
+
+    /**
+     * Assigns the remaining critical path length of every given {@link ITaskRunner}, which is its expected cost plus the
+     * longest length among its parents.  The list is walked from the end so every parent is assigned before its
+     * dependents, and parents that aren't in the list count as nothing.
+     * @param dependencyOrder Every {@link ITaskRunner} in a graph with each one after everything it depends on
+     * @param history Expected cost of each task
+     */
+    public static void assignCriticalPaths(List<ITaskRunner> dependencyOrder, TaskCostHistory history) {
+        Map<ITaskRunner, Long> lengths = new IdentityHashMap<>(dependencyOrder.size());
+        for (ListIterator<ITaskRunner> runners = dependencyOrder.listIterator(dependencyOrder.size()); runners.hasPrevious(); ) {
+            ITaskRunner runner = runners.previous();
+            long longestParent = 0;
+            for (ITaskRunner parent : runner.getParents()) {
+                Long parentLength = lengths.get(parent);
+                if (parentLength != null) {
+                    longestParent = Math.max(longestParent, parentLength);
+                }
+            }
+            long length = history.getCost(runner) + longestParent;
+            runner.setCriticalPathLength(length);
+            lengths.put(runner, length);
+        }
+    }
+}
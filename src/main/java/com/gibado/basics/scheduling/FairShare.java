@@ -0,0 +1,94 @@
+package com.gibado.basics.scheduling;
+
+import com.gibado.basics.workunit.ITaskRunner;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * A tenant of a {@link FairShareScheduler}.  Every {@link ITaskRunner} in a share waits in the share's own queue, and
+ * threads are divided between shares with ready work by weight, so a share with weight 2 gets about twice the thread
+ * time of a share with weight 1 while both have work.  Give every graph a caller submits the same share to treat that
+ * caller as one tenant, otherwise each submitted graph gets a share of its own.
+ * <p>
+ * Within a share the {@link ITaskRunner} with the longest remaining critical path goes first, the same as without fair
+ * sharing, and runners with the same length go in the order they became ready.  Without a {@link TaskCostHistory}
+ * every length is 0, which leaves the share's queue in plain arrival order.
+ */
+public class FairShare {
+    /** Puts the longest remaining critical path first, then whatever was queued first */
+    private static final Comparator<Queued> LONGEST_PATH_FIRST =
+            Comparator.<Queued>comparingLong(queued -> queued.criticalPath).reversed()
+                    .thenComparingLong(queued -> queued.order);
+
+    private final String name;
+    private final int weight;
+
+    // Only touched while holding the scheduler's lock
+    final PriorityQueue<Queued> ready = new PriorityQueue<>(LONGEST_PATH_FIRST);
+    /** Weighted thread time this share has been given, in nanoseconds */
+    long pass;
+    /** Breaks ties between shares with the same pass in the order they were queued */
+    long sequence;
+
+    /** Smoothed nanoseconds a task in this share has taken, or 0 if none have finished */
+    volatile long averageNanos;
+
+    /**
+     * Creates a share with a weight of 1
+     * @param name Name of the tenant
+     */
+    public FairShare(String name) {
+        this(name, 1);
+    }
+
+    /**
+     * Creates a share
+     * @param name Name of the tenant
+     * @param weight How many parts of the threads this share gets next to a share with weight 1
+     */
+    public FairShare(String name, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Fair share weight has to be at least 1: " + weight);
+        }
+        this.name = name;
+        this.weight = weight;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Returns the smoothed time a task in this share has taken
+     * @return Returns the nanoseconds a task in this share has taken, or 0 if none have finished
+     */
+    public long getAverageNanos() {
+        return averageNanos;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (weight " + weight + ")";
+    }
+
+    /**
+     * Work of an {@link ITaskRunner} waiting in a share, with the runner's critical path length taken when it was queued
+     * so the queue's order can't change under it
+     */
+    static final class Queued {
+        final Runnable work;
+        final long criticalPath;
+        final long order;
+
+        Queued(ITaskRunner runner, Runnable work, long order) {
+            this.work = work;
+            this.criticalPath = runner.getCriticalPathLength();
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.gibado.basics.scheduling;
+
+import com.gibado.basics.workunit.ITaskRunner;
+import com.gibado.basics.workunit.TaskTimes;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * Picks which ready {@link ITaskRunner} gets the next free thread so concurrent graphs share the threads by the weight
+ * of their {@link FairShare} instead of by how much work they have queued.  Each share keeps a pass of the thread time
+ * it has been given divided by its weight, and the ready share with the lowest pass goes next.  A share that was idle
+ * starts again from the lowest pass in use, so it can't save up time, and a small graph that shows up behind a huge one
+ * gets a thread as soon as one frees up.
+ * <p>
+ * A share is charged its average task time when one of its tasks is handed out.  The average is measured as tasks
+ * finish, so shares with long tasks are charged more per task than shares with short ones.  Which of a share's tasks is
+ * handed out is up to the share, see {@link FairShare}.
+ */
+public class FairShareScheduler {
+    /** Nanoseconds charged for a task before anything has been measured */
+    public static final long DEFAULT_COST = 1_000_000;
+    /** Each new time moves an average 1 / 2^SMOOTHING_SHIFT of the way toward it */
+    private static final int SMOOTHING_SHIFT = 2;
+    /** Orders shares by lowest pass, then by the order they were queued */
+    private static final Comparator<FairShare> LOWEST_PASS_FIRST =
+            Comparator.<FairShare>comparingLong(share -> share.pass).thenComparingLong(share -> share.sequence);
+
+    /** Shares with ready {@link ITaskRunner}s */
+    private final TreeSet<FairShare> active = new TreeSet<>(LOWEST_PASS_FIRST);
+    /** Pass of the share that went last, which idle shares start again from */
+    private long virtualTime;
+    private long nextSequence;
+    /** Order {@link ITaskRunner}s were queued in, which breaks ties within a share */
+    private long nextQueued;
+    /** Smoothed nanoseconds a task of any share has taken, charged to shares that haven't been measured yet */
+    private volatile long averageNanos;
+
+    /**
+     * Queues an {@link ITaskRunner} that is ready to go in its {@link FairShare}
+     * @param runner {@link ITaskRunner} whose resources are claimed and that is waiting for a thread
+     * @throws IllegalArgumentException if the {@link ITaskRunner} doesn't have a {@link FairShare}
+     */
+    public void add(ITaskRunner runner) {
+        add(runner, runner);
+    }
+
+    /**
+     * Queues work done on behalf of an {@link ITaskRunner} in the runner's {@link FairShare}, where it waits and is
+     * charged like one of the share's tasks
+     * @param runner {@link ITaskRunner} the work is done for
+     * @param work Work to run once the share's turn comes up
+     * @throws IllegalArgumentException if the {@link ITaskRunner} doesn't have a {@link FairShare}
+     */
+    public synchronized void add(ITaskRunner runner, Runnable work) {
+        FairShare share = runner.getFairShare();
+        if (share == null) {
+            throw new IllegalArgumentException(runner.getName() + " doesn't have a fair share");
+        }
+        if (share.ready.isEmpty()) {
+            share.pass = Math.max(share.pass, virtualTime);
+            share.sequence = nextSequence++;
+            active.add(share);
+        }
+        share.ready.add(new FairShare.Queued(runner, work, nextQueued++));
+    }
+
+    /**
+     * Takes the most urgent work of the share with the lowest pass and charges the share for it
+     * @return Returns the {@link ITaskRunner} or other queued work that should get the free thread, or null if none is
+     * waiting
+     */
+    public synchronized Runnable poll() {
+        FairShare share = active.pollFirst();
+        if (share == null) {
+            return null;
+        }
+        Runnable work = share.ready.poll().work;
+        virtualTime = share.pass;
+        share.pass += Math.max(1, costOf(share) / share.getWeight());
+        if (!share.ready.isEmpty()) {
+            // Back in line behind shares with the same pass
+            share.sequence = nextSequence++;
+            active.add(share);
+        }
+        return work;
+    }
+
+    /**
+     * Adds the time a finished {@link ITaskRunner} took to the average of its share
+     * @param runner {@link ITaskRunner} that has finished its task
+     */
+    public void record(ITaskRunner runner) {
+        FairShare share = runner.getFairShare();
+        long nanos = runner.getTimes().getExecute();
+        if (share == null || nanos == TaskTimes.UNSET) {
+            return;
+        }
+        // Racing updates may lose one measurement, which the smoothing makes up for
+        share.averageNanos = smooth(share.averageNanos, nanos);
+        averageNanos = smooth(averageNanos, nanos);
+    }
+
+    /**
+     * Returns how many shares have {@link ITaskRunner}s waiting for a thread
+     * @return Returns how many shares have {@link ITaskRunner}s waiting for a thread
+     */
+    public synchronized int getActiveShares() {
+        return active.size();
+    }
+
+    /**
+     * Returns how many {@link ITaskRunner}s are waiting for a thread across every share
+     * @return Returns how many {@link ITaskRunner}s are waiting for a thread
+     */
+    public synchronized int getWaiting() {
+        int waiting = 0;
+        for (FairShare share : active) {
+            waiting += share.ready.size();
+        }
+        return waiting;
+    }
+
+    /**
+     * Returns what a share is charged for handing out one of its tasks
+     * @param share Share a task is being handed out for
+     * @return Returns the nanoseconds to charge before the weight is applied
+     */
+    private long costOf(FairShare share) {
+        long cost = share.averageNanos;
+        if (cost == 0) {
+            cost = averageNanos;
+        }
+        return cost == 0 ? DEFAULT_COST : cost;
+    }
+
+    private static long smooth(long average, long nanos) {
+        long measured = Math.max(1, nanos);
+        return average == 0 ? measured : average + ((measured - average) >> SMOOTHING_SHIFT);
+    }
+}
@@ -0,0 +1,120 @@
+package com.gibado.basics.scheduling;
+
+import com.gibado.basics.workunit.ITaskRunner;
+import com.gibado.basics.workunit.TaskTimes;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers how long tasks took by name so the next run of a graph can estimate how long each of its
+ * {@link ITaskRunner}s will take.  Keep one of these around between runs for the estimates to improve.  Times are
+ * kept in nanoseconds so tasks that take less than a millisecond still get told apart.
+ */
+public class TaskCostHistory {
+    /** Cost given to a task that has never been seen, which makes the critical path a count of tasks */
+    public static final long DEFAULT_COST = 1;
+    /** Average returned for a task that has never been seen */
+    public static final long UNKNOWN = -1;
+    /** Each new time moves the estimate 1 / 2^SMOOTHING_SHIFT of the way toward it */
+    private static final int SMOOTHING_SHIFT = 2;
+
+    private final Map<String, AtomicLong> averages = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the time a finished {@link ITaskRunner} took to the history of its name
+     * @param runner {@link ITaskRunner} that has finished its task
+     */
+    public void record(ITaskRunner runner) {
+        if (runner.getName() == null) {
+            return;
+        }
+        long executeNanos = runner.getTimes().getExecute();
+        if (executeNanos != TaskTimes.UNSET) {
+            recordNanos(runner.getName(), executeNanos);
+        } else if (runner.getTaskTime() >= 0) {
+            record(runner.getName(), runner.getTaskTime());
+        }
+    }
+
+    /**
+     * Adds a time to the history of the given task name
+     * @param name Name of the task
+     * @param taskTime Milliseconds the task took
+     */
+    public void record(String name, long taskTime) {
+        recordNanos(name, TimeUnit.MILLISECONDS.toNanos(taskTime));
+    }
+
+    /**
+     * Adds a time to the history of the given task name
+     * @param name Name of the task
+     * @param nanos Nanoseconds the task took
+     */
+    public void recordNanos(String name, long nanos) {
+        long taskNanos = Math.max(0, nanos);
+        AtomicLong average = averages.get(name);
+        if (average == null) {
+            average = averages.putIfAbsent(name, new AtomicLong(taskNanos));
+            if (average == null) {
+                return;
+            }
+        }
+        long current;
+        long next;
+        do {
+            current = average.get();
+            next = current + smoothingStep(taskNanos - current);
+        } while (!average.compareAndSet(current, next));
+    }
+
+    /**
+     * Returns the smoothed average time recorded for the given task name
+     * @param name Name of the task
+     * @return Returns the average milliseconds the task took, or {@link #UNKNOWN} if it has never been recorded
+     */
+    public long getAverage(String name) {
+        long nanos = getAverageNanos(name);
+        return nanos == UNKNOWN ? UNKNOWN : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Returns the smoothed average time recorded for the given task name
+     * @param name Name of the task
+     * @return Returns the average nanoseconds the task took, or {@link #UNKNOWN} if it has never been recorded
+     */
+    public long getAverageNanos(String name) {
+        AtomicLong average = name == null ? null : averages.get(name);
+        return average == null ? UNKNOWN : average.get();
+    }
+
+    /**
+     * Returns the expected time for the given task name
+     * @param name Name of the task
+     * @return Returns the expected nanoseconds for the task, never less than {@link #DEFAULT_COST}
+     */
+    public long getCost(String name) {
+        return Math.max(DEFAULT_COST, getAverageNanos(name));
+    }
+
+    /**
+     * Returns the expected time for the given {@link ITaskRunner}
+     * @param runner {@link ITaskRunner} to estimate
+     * @return Returns the expected nanoseconds for the task, never less than {@link #DEFAULT_COST}
+     */
+    public long getCost(ITaskRunner runner) {
+        return getCost(runner.getName());
+    }
+
+    /**
+     * Returns how far the average moves toward a new time, rounded to the nearest nanosecond in either direction
+     * @param difference New time minus the current average
+     * @return Returns the amount to add to the average
+     */
+    private static long smoothingStep(long difference) {
+        long half = 1L << (SMOOTHING_SHIFT - 1);
+        return difference >= 0 ? (difference + half) >> SMOOTHING_SHIFT : -((-difference + half) >> SMOOTHING_SHIFT);
+    }
+}
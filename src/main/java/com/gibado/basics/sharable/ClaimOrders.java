@@ -0,0 +1,35 @@
+package com.gibado.basics.sharable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the claim orders every {@link ISharable} is ordered by, so all of them share one global order
+ */
+final class ClaimOrders {
+    private static final AtomicLong nextClaimOrder = new AtomicLong();
+    /** Claim orders handed to {@link ISharable}s that don't keep their own */
+    private static final Map<ISharable<?>, Long> assigned = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private ClaimOrders() {
+    }
+
+    /**
+     * Returns a claim order that hasn't been used yet
+     * @return Returns a claim order that hasn't been used yet
+     */
+    static long next() {
+        return nextClaimOrder.getAndIncrement();
+    }
+
+    /**
+     * Returns the claim order of an {@link ISharable} that doesn't keep its own, handing one out the first time
+     * @param sharable {@link ISharable} to look up
+     * @return Returns the claim order of the {@link ISharable}
+     */
+    static long of(ISharable<?> sharable) {
+        return assigned.computeIfAbsent(sharable, key -> next());
+    }
+}
@@ -0,0 +1,51 @@
+package com.gibado.basics.sharable;
+
+import com.gibado.basics.workunit.ITaskRunner;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Padding laid out before the owner field.  Super class fields are placed first so this keeps other objects off the
+ * owner's cache line.
+ */
+@SuppressWarnings("unused")
+abstract class ClaimOwnerLeftPad {
+    long p01, p02, p03, p04, p05, p06, p07;
+}
+
+/**
+ * Holds the owner field between the two paddings
+ */
+abstract class ClaimOwnerField extends ClaimOwnerLeftPad {
+    static final AtomicReferenceFieldUpdater<ClaimOwnerField, ITaskRunner> OWNER =
+            AtomicReferenceFieldUpdater.newUpdater(ClaimOwnerField.class, ITaskRunner.class, "owner");
+
+    volatile ITaskRunner owner;
+}
+
+/**
+ * The {@link ITaskRunner} currently claiming a {@link Sharable}, updated only by compare-and-set and padded to sit on
+ * its own cache line so claims on neighbouring {@link Sharable}s don't slow each other down
+ */
+@SuppressWarnings("unused")
+final class ClaimOwner extends ClaimOwnerField {
+    long p11, p12, p13, p14, p15, p16, p17;
+
+    /**
+     * Returns the current owner
+     * @return Returns the current owner or null if nothing is claiming it
+     */
+    ITaskRunner get() {
+        return owner;
+    }
+
+    /**
+     * Sets the owner to update if the owner is currently expect
+     * @param expect Expected current owner
+     * @param update New owner
+     * @return Returns true if the owner was changed
+     */
+    boolean compareAndSet(ITaskRunner expect, ITaskRunner update) {
+        return OWNER.compareAndSet(this, expect, update);
+    }
+}
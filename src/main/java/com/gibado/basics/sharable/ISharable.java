@@ -15,6 +15,15 @@ public interface ISharable<T> {
      */
     boolean isLocked();
 
+    /**
+     * Returns true if this {@link ISharable} is currently claimed in a way that also keeps readers out
+     * Without shared reads any claim keeps readers out, which is what the default assumes.
+     * @return Returns true if this {@link ISharable} cannot currently be claimed for reading
+     */
+    default boolean isReadLocked() {
+        return isLocked();
+    }
+
     /**
      * Locks this Sharable so that other threads cannot use it until this is released
      * @param runner The {@link ITaskRunner} that is claiming this {@link Sharable}
@@ -22,9 +31,64 @@ public interface ISharable<T> {
      */
     T claim(ITaskRunner runner);
 
+    /**
+     * Claims this {@link ISharable} for reading only.  Implementations that support shared reads let other readers claim
+     * it at the same time while writers are kept out until every reader has released it.
+     * @param runner The {@link ITaskRunner} that is claiming this {@link ISharable}
+     * The default has no shared reads and makes an exclusive claim.
+     * @return Returns the object value if it's available for reading, otherwise null is returned
+     */
+    default T claimRead(ITaskRunner runner) {
+        return claim(runner);
+    }
+
     /**
      * Releases the claim on this {@link Sharable} so that other threads can access this again.
      * @param runner Must be the original {@link ITaskRunner} that claimed this {@link Sharable}
      */
     void release(ITaskRunner runner);
+
+    /**
+     * Registers a one time callback that is run the next time this {@link ISharable} is released.  Waiters are signaled
+     * one at a time in the order they were registered.  The default wraps the callback in a {@link ReleaseWaiter} and
+     * registers it with {@link #awaitRelease(ReleaseWaiter)}.
+     * @param onRelease Callback to run when this {@link ISharable} is released
+     * @return Returns the {@link ReleaseWaiter} that can be used to stop waiting
+     */
+    default ReleaseWaiter awaitRelease(Runnable onRelease) {
+        ReleaseWaiter waiter = new ReleaseWaiter(onRelease);
+        awaitRelease(waiter);
+        return waiter;
+    }
+
+    /**
+     * Registers a {@link ReleaseWaiter} that is signaled the next time this {@link ISharable} is released.  Waiters are
+     * signaled one at a time in the order they were registered.  Implementations should keep a {@link ReleaseQueue},
+     * add the waiter to it and signal it from {@link #release}.  The default checks {@link #isLocked()} every
+     * millisecond instead.
+     * @param waiter {@link ReleaseWaiter} that hasn't been registered yet
+     * @throws IllegalStateException if the waiter has already been registered
+     */
+    default void awaitRelease(ReleaseWaiter waiter) {
+        ReleasePoller.await(this, waiter);
+    }
+
+    /**
+     * Returns a number that is unique to this {@link ISharable} and never changes.  Multiple {@link ISharable}s are always
+     * claimed in ascending claim order so that runners with overlapping resources can't hold pieces of each other's sets.
+     * Implementations should draw their claim order once from {@link #nextClaimOrder()} and keep it.  The default hands
+     * one out the first time it is asked for and looks it up by {@link Object#equals} after that.
+     * @return Returns the claim order of this {@link ISharable}
+     */
+    default long getClaimOrder() {
+        return ClaimOrders.of(this);
+    }
+
+    /**
+     * Hands out the next claim order of the one global order every {@link ISharable} is claimed in
+     * @return Returns a claim order that hasn't been used yet
+     */
+    static long nextClaimOrder() {
+        return ClaimOrders.next();
+    }
 }
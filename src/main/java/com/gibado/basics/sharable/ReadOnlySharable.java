@@ -22,9 +22,8 @@ public class ReadOnlySharable<T> extends Sharable<T> {
 	 * @return Returns the object value
 	 */
 	@Override
-	public synchronized T claim(ITaskRunner runner) {
-		T value = super.claim(runner);
-		this.release(runner);
-		return value;
+	public T claim(ITaskRunner runner) {
+		// Nothing can change the value so there is nothing to lock
+		return getValue();
 	}
 }
@@ -0,0 +1,151 @@
+package com.gibado.basics.sharable;
+
+import com.gibado.basics.workunit.ITaskRunner;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An object wrapper that lets any number of readers share an object at once while a writer has it to itself.  Writers
+ * are preferred: once a writer has been turned away, new readers are turned away too until it gets its claim or
+ * finishes without one, so a steady stream of overlapping readers can't starve it.
+ * @param <T> Object type
+ */
+public class ReadWriteSharable<T> implements ISharable<T> {
+    private T value;
+    private ITaskRunner writer = null;
+    private final Set<ITaskRunner> readers = new HashSet<>();
+    private final Set<ITaskRunner> waitingWriters = new HashSet<>();
+    private final ReleaseQueue releaseQueue = new ReleaseQueue(this);
+    private final long claimOrder = ISharable.nextClaimOrder();
+
+    /**
+     * An object wrapper that lets any number of readers share an object at once while a writer has it to itself
+     * @param value Object that could be used by multiple threads
+     */
+    public ReadWriteSharable(T value) {
+        this.value = value;
+    }
+
+    @Override
+    public synchronized void assignValue(T value) {
+        if (this.value == null) {
+            this.value = value;
+        }
+    }
+
+    @Override
+    public synchronized boolean isLocked() {
+        return writer != null || !readers.isEmpty();
+    }
+
+    /**
+     * Returns true if there is a writer or a writer is waiting for its claim
+     * @return Returns true if this {@link ReadWriteSharable} cannot currently be claimed for reading
+     */
+    @Override
+    public synchronized boolean isReadLocked() {
+        return writer != null || !waitingWriters.isEmpty();
+    }
+
+    /**
+     * Claims this {@link ReadWriteSharable} for writing.  This only succeeds when there are no readers or writer.  A
+     * writer that is turned away keeps new readers out until it gets its claim or its {@link ITaskRunner} finishes.
+     * @param runner The {@link ITaskRunner} that is claiming this {@link ReadWriteSharable}
+     * @return Returns the object value if it's available, otherwise null is returned
+     */
+    @Override
+    public synchronized T claim(ITaskRunner runner) {
+        if (!isLocked()) {
+            writer = runner;
+            waitingWriters.remove(runner);
+            return value;
+        }
+        if (runner != null && waitingWriters.add(runner)) {
+            // A writer that times out or fails never claims, so stop holding readers back for it once it is done
+            runner.getCompletion().whenComplete((finished, error) -> stopWaiting(runner));
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized T claimRead(ITaskRunner runner) {
+        if (!isReadLocked()) {
+            readers.add(runner);
+            return value;
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public void release(ITaskRunner runner) {
+        boolean released;
+        boolean writerWaiting;
+        synchronized (this) {
+            if (writer != null && writer.equals(runner)) {
+                writer = null;
+                released = true;
+            } else {
+                released = readers.remove(runner);
+            }
+            writerWaiting = !waitingWriters.isEmpty();
+            if (!released || (writerWaiting && isLocked())) {
+                // Only the last reader out can let a waiting writer in, and readers woken now would be turned away
+                return;
+            }
+        }
+        // Wake waiters outside of the lock
+        if (writerWaiting) {
+            // Readers ahead of the writer will be turned away and can't pass the signal on, so wake everyone
+            releaseQueue.signalAll();
+        } else {
+            releaseQueue.signal();
+        }
+    }
+
+    /**
+     * Lets readers back in once the last waiting writer has finished without its claim
+     * @param runner Writer that is no longer waiting
+     */
+    private void stopWaiting(ITaskRunner runner) {
+        boolean readersHeldBack;
+        synchronized (this) {
+            readersHeldBack = waitingWriters.remove(runner) && waitingWriters.isEmpty() && writer == null;
+        }
+        if (readersHeldBack) {
+            // Readers waiting on this may have nothing holding it that would release and wake them
+            releaseQueue.signal();
+        }
+    }
+
+    @Override
+    public void awaitRelease(ReleaseWaiter waiter) {
+        releaseQueue.add(waiter);
+    }
+
+    @Override
+    public long getClaimOrder() {
+        return claimOrder;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (writer != null) {
+            sb.append(" - ").append(writer.toString());
+        }
+        if (!readers.isEmpty()) {
+            sb.append(" - ").append(readers.size()).append(" reader(s)");
+        }
+        if (value != null) {
+            sb.append(" - ");
+            if (value instanceof ISharable) {
+                sb.append(Sharable.SHARABLE_TAG);
+            } else {
+                sb.append(value.toString());
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,63 @@
+package com.gibado.basics.sharable;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signals release waiters for {@link ISharable}s that don't keep a {@link ReleaseQueue} of their own by checking every
+ * so often whether the {@link ISharable} is still locked.  This is what {@link ISharable#awaitRelease} falls back to.
+ */
+final class ReleasePoller {
+    /** Milliseconds between checks */
+    static final long POLL_MILLIS = 1;
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "ISharable release poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private ReleasePoller() {
+    }
+
+    /**
+     * Registers a waiter that is signaled once the given {@link ISharable} is no longer locked
+     * @param sharable {@link ISharable} to watch
+     * @param waiter {@link ReleaseWaiter} to signal when the {@link ISharable} is seen unlocked
+     */
+    static void await(ISharable<?> sharable, ReleaseWaiter waiter) {
+        ReleaseQueue queue = new ReleaseQueue(sharable);
+        queue.add(waiter);
+        Poll poll = new Poll(queue, waiter);
+        poll.future = TIMER.scheduleWithFixedDelay(poll, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * One waiter's repeating check
+     */
+    private static final class Poll implements Runnable {
+        private final ReleaseQueue queue;
+        private final ReleaseWaiter waiter;
+        private volatile ScheduledFuture<?> future;
+
+        private Poll(ReleaseQueue queue, ReleaseWaiter waiter) {
+            this.queue = queue;
+            this.waiter = waiter;
+        }
+
+        @Override
+        public void run() {
+            if (waiter.isWaiting() && !queue.getSharable().isLocked()) {
+                queue.signal();
+            }
+            ScheduledFuture<?> scheduled = future;
+            if (!waiter.isWaiting() && scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
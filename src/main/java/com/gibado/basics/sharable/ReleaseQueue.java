@@ -0,0 +1,91 @@
+package com.gibado.basics.sharable;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * FIFO queue of {@link ReleaseWaiter}s waiting for an {@link ISharable} to be released
+ */
+public class ReleaseQueue {
+    private final ISharable<?> sharable;
+    private final Queue<ReleaseWaiter> waiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a queue of waiters for the given {@link ISharable}
+     * @param sharable {@link ISharable} the waiters are waiting on
+     */
+    public ReleaseQueue(ISharable<?> sharable) {
+        this.sharable = sharable;
+    }
+
+    /**
+     * Adds a waiter to the end of the queue
+     * @param onRelease Callback to run when this waiter is signaled
+     * @return Returns the {@link ReleaseWaiter} that was added
+     */
+    public ReleaseWaiter add(Runnable onRelease) {
+        ReleaseWaiter waiter = new ReleaseWaiter(onRelease);
+        add(waiter);
+        return waiter;
+    }
+
+    /**
+     * Adds a waiter that was created ahead of time to the end of the queue
+     * @param waiter {@link ReleaseWaiter} to add
+     * @throws IllegalStateException if the waiter has already been registered
+     */
+    public void add(ReleaseWaiter waiter) {
+        // Registered before it is queued so a signal never finds it without its queue
+        waiter.register(this);
+        waiters.add(waiter);
+    }
+
+    /**
+     * Signals the longest waiting {@link ReleaseWaiter} that has not been cancelled
+     */
+    public void signal() {
+        ReleaseWaiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            if (waiter.signal()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Signals every {@link ReleaseWaiter} that is waiting now.  Waiters added while this runs wait for the next signal.
+     */
+    public void signalAll() {
+        for (int waiting = waiters.size(); waiting > 0; waiting--) {
+            ReleaseWaiter waiter = waiters.poll();
+            if (waiter == null) {
+                return;
+            }
+            waiter.signal();
+        }
+    }
+
+    /**
+     * Returns true if nothing is waiting on the {@link ISharable}
+     * @return Returns true if nothing is waiting on the {@link ISharable}
+     */
+    public boolean isEmpty() {
+        return waiters.isEmpty();
+    }
+
+    /**
+     * Returns the {@link ISharable} the waiters are waiting on
+     * @return Returns the {@link ISharable} the waiters are waiting on
+     */
+    public ISharable<?> getSharable() {
+        return sharable;
+    }
+
+    /**
+     * Removes the given waiter from the queue
+     * @param waiter {@link ReleaseWaiter} to remove
+     */
+    void remove(ReleaseWaiter waiter) {
+        waiters.remove(waiter);
+    }
+}
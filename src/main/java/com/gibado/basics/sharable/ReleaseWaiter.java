@@ -0,0 +1,93 @@
+package com.gibado.basics.sharable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single registration waiting for an {@link ISharable} to be released.  A waiter is either signaled or cancelled,
+ * never both.
+ */
+public class ReleaseWaiter {
+    private static final int WAITING = 0;
+    private static final int SIGNALED = 1;
+    private static final int CANCELLED = 2;
+
+    private final Runnable onRelease;
+    private final AtomicInteger status = new AtomicInteger(WAITING);
+    private volatile ReleaseQueue queue;
+
+    /**
+     * Creates a waiter that isn't registered yet.  Creating it ahead of {@link ISharable#awaitRelease(ReleaseWaiter)}
+     * lets the callback know its own waiter even when the release lands before registering returns.
+     * @param onRelease Callback to run when this waiter is signaled
+     */
+    public ReleaseWaiter(Runnable onRelease) {
+        this.onRelease = onRelease;
+    }
+
+    /**
+     * Stops waiting if this waiter has not been signaled yet
+     * @return Returns true if the waiter was cancelled, false if it had already been signaled
+     */
+    public boolean cancel() {
+        if (status.compareAndSet(WAITING, CANCELLED)) {
+            ReleaseQueue registered = queue;
+            if (registered != null) {
+                registered.remove(this);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if this waiter has been neither signaled nor cancelled
+     * @return Returns true if this waiter has been neither signaled nor cancelled
+     */
+    public boolean isWaiting() {
+        return status.get() == WAITING;
+    }
+
+    /**
+     * Hands a signal this waiter received to the next waiter.  Nothing is passed on if the {@link ISharable} has been
+     * claimed again in a way that keeps readers out since that claimer's release will signal the next waiter.
+     */
+    public void passOn() {
+        ReleaseQueue registered = queue;
+        if (registered != null && !registered.getSharable().isReadLocked()) {
+            registered.signal();
+        }
+    }
+
+    /**
+     * Returns the {@link ISharable} this is waiting on
+     * @return Returns the {@link ISharable} this is waiting on, or null if this waiter hasn't been registered yet
+     */
+    public ISharable<?> getSharable() {
+        ReleaseQueue registered = queue;
+        return registered == null ? null : registered.getSharable();
+    }
+
+    /**
+     * Ties this waiter to the queue it is added to
+     * @param queue {@link ReleaseQueue} this waiter is being added to
+     * @throws IllegalStateException if this waiter has already been registered
+     */
+    void register(ReleaseQueue queue) {
+        if (this.queue != null) {
+            throw new IllegalStateException("A ReleaseWaiter can only be registered once");
+        }
+        this.queue = queue;
+    }
+
+    /**
+     * Runs the callback if this waiter has not been cancelled
+     * @return Returns true if the callback was run
+     */
+    boolean signal() {
+        if (status.compareAndSet(WAITING, SIGNALED)) {
+            onRelease.run();
+            return true;
+        }
+        return false;
+    }
+}
@@ -3,14 +3,17 @@ package com.gibado.basics.sharable;
 import com.gibado.basics.workunit.ITaskRunner;
 
 /**
- * An object wrapper that protects an object that might be shared between threads
+ * An object wrapper that protects an object that might be shared between threads.  Claims are lock free, the claiming
+ * {@link ITaskRunner} is swapped in and out with compare-and-set.
  * @param <T> Object type
  */
 public class Sharable<T> implements ISharable<T> {
 	public static final String SHARABLE_TAG = "SHARABLE";
 
-	private T value;
-	private ITaskRunner claimed = null;
+	private volatile T value;
+	private final ClaimOwner claimed = new ClaimOwner();
+	private final ReleaseQueue releaseQueue = new ReleaseQueue(this);
+	private final long claimOrder = ISharable.nextClaimOrder();
 
 	/**
 	 * An object wrapper that protects an object that might be shared between threads
@@ -29,31 +32,65 @@ public class Sharable<T> implements ISharable<T> {
 	}
 
 	@Override
-	public synchronized boolean isLocked() {
-		return claimed != null;
+	public boolean isLocked() {
+		return claimed.get() != null;
 	}
 
 	@Override
-	public synchronized T claim(ITaskRunner runner) {
-		if (!isLocked()) {
-			claimed = runner;
+	public boolean isReadLocked() {
+		return isLocked();
+	}
+
+	@Override
+	public T claim(ITaskRunner runner) {
+		// Only attempt the compare-and-set when it can succeed so failed claims don't steal the cache line
+		if (claimed.get() == null && claimed.compareAndSet(null, runner)) {
 			return value;
 		} else {
 			return null;
 		}
 	}
 
+	/**
+	 * A {@link Sharable} has no shared reads so this is the same as an exclusive claim
+	 * @param runner The {@link ITaskRunner} that is claiming this {@link Sharable}
+	 * @return Returns the object value if it's available, otherwise null is returned
+	 */
+	@Override
+	public T claimRead(ITaskRunner runner) {
+		return claim(runner);
+	}
+
 	@Override
-	public synchronized void release(ITaskRunner runner) {
-	    if (claimed.equals(runner)) {
-	        claimed = null;
-        }
+	public void release(ITaskRunner runner) {
+		if (runner != null && claimed.compareAndSet(runner, null)) {
+			releaseQueue.signal();
+		}
+	}
+
+	@Override
+	public void awaitRelease(ReleaseWaiter waiter) {
+		releaseQueue.add(waiter);
+	}
+
+	@Override
+	public long getClaimOrder() {
+		return claimOrder;
+	}
+
+	/**
+	 * Returns the object value without claiming it
+	 * @return Returns the object value
+	 */
+	protected T getValue() {
+		return value;
 	}
 
 	public String toString() {
 	    StringBuilder sb = new StringBuilder();
-	    if (claimed != null) {
-	        sb.append(" - ").append(claimed.toString());
+	    ITaskRunner owner = claimed.get();
+	    if (owner != null) {
+	        sb.append(" - ").append(owner.toString());
         }
 	    if (value != null) {
 			sb.append(" - ");
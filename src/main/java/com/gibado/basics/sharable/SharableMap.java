@@ -1,5 +1,7 @@
 package com.gibado.basics.sharable;
 
+import com.gibado.basics.metrics.ContentionProfiler;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -8,6 +10,7 @@ import java.util.Map;
  */
 public class SharableMap {
     private Map<String, ISharable<?>> resourceMap = new HashMap<>();
+    private ContentionProfiler profiler;
 
     /**
      * Wraps the given objectToShare in a new {@link ISharable} and adds it to the resource map
@@ -16,7 +19,17 @@ public class SharableMap {
      * @param <T> Object class
      */
     public <T> void addNewResource(String key, T objectToShare) {
-        resourceMap.put(key, new Sharable<>(objectToShare));
+        resourceMap.put(key, wrap(key, new Sharable<>(objectToShare)));
+    }
+
+    /**
+     * Wraps the given objectToShare in a new {@link ReadWriteSharable} and adds it to the resource map
+     * @param key Key to use when adding it to the resource map
+     * @param objectToShare Object to wrap in a {@link ReadWriteSharable}
+     * @param <T> Object class
+     */
+    public <T> void addNewReadWriteResource(String key, T objectToShare) {
+        resourceMap.put(key, wrap(key, new ReadWriteSharable<>(objectToShare)));
     }
 
     /**
@@ -26,7 +39,30 @@ public class SharableMap {
      * @param <T> Object class
      */
     public <T> void addResource(String key, ISharable<T> sharable) {
-        resourceMap.put(key, sharable);
+        resourceMap.put(key, wrap(key, sharable));
+    }
+
+    /**
+     * Records contention on every resource in this {@link SharableMap}, including ones added later, under its key.  Do
+     * this before handing the resources to a plant since the resources are replaced with profiled wrappers.
+     * @param profiler {@link ContentionProfiler} to record into
+     */
+    public void profile(ContentionProfiler profiler) {
+        this.profiler = profiler;
+        for (Map.Entry<String, ISharable<?>> entry : resourceMap.entrySet()) {
+            entry.setValue(wrap(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Wraps a resource for profiling if this {@link SharableMap} is being profiled
+     * @param key Key the resource is added under
+     * @param sharable {@link ISharable} being added
+     * @param <T> Object class
+     * @return Returns the {@link ISharable} to add to the resource map
+     */
+    private <T> ISharable<T> wrap(String key, ISharable<T> sharable) {
+        return profiler == null ? sharable : profiler.profile(key, sharable);
     }
 
     /**
@@ -0,0 +1,113 @@
+package com.gibado.basics.workunit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Helper class for walking {@link ITask} and {@link ITaskRunner} graphs.  Walks keep their own stack instead of
+ * recursing, so a graph can be as deep as memory allows without changing the thread stack size.
+ */
+public class GraphHelper {
+    /**
+     * Lists every node that can be reached from the root, each one after everything it depends on, so the root is
+     * last.  A node reached through more than one parent is listed once.  Every node and edge is visited once.
+     * @param root Node to start from
+     * @param dependents Returns the nodes a node depends on, which may be null
+     * @param names Returns the name of a node for the cycle message
+     * @param <T> Node class
+     * @return Returns every reachable node with dependents before the nodes that depend on them
+     * @throws IllegalArgumentException if a node depends on itself through its dependents
+     */
+    public static <T> List<T> dependencyOrder(T root, Function<? super T, ? extends Collection<? extends T>> dependents,
+                                              Function<? super T, String> names) {
+        // False while a node is on the stack, true once everything below it has been listed
+        Map<T, Boolean> finished = new IdentityHashMap<>();
+        List<T> order = new ArrayList<>();
+        Deque<Frame<T>> stack = new ArrayDeque<>();
+        finished.put(root, false);
+        stack.push(new Frame<>(root, dependents.apply(root)));
+        while (!stack.isEmpty()) {
+            Frame<T> frame = stack.peek();
+            if (frame.remaining.hasNext()) {
+                T dependent = frame.remaining.next();
+                if (dependent == null) {
+                    continue;
+                }
+                Boolean done = finished.get(dependent);
+                if (done == null) {
+                    finished.put(dependent, false);
+                    stack.push(new Frame<>(dependent, dependents.apply(dependent)));
+                } else if (!done) {
+                    throw new IllegalArgumentException("Cycle found: " + describeCycle(stack, dependent, names));
+                }
+            } else {
+                stack.pop();
+                finished.put(frame.node, true);
+                order.add(frame.node);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Lists every {@link ITaskRunner} that can be reached from the root, each one after everything it depends on
+     * @param root {@link ITaskRunner} to start from
+     * @return Returns every reachable {@link ITaskRunner} with the root last
+     * @throws IllegalArgumentException if an {@link ITaskRunner} depends on itself through its dependents
+     */
+    public static List<ITaskRunner> dependencyOrder(ITaskRunner root) {
+        return dependencyOrder(root, ITaskRunner::getDependents, ITaskRunner::getName);
+    }
+
+    /**
+     * Lists every {@link ITask} that can be reached from the root, each one after everything it depends on
+     * @param root {@link ITask} to start from
+     * @return Returns every reachable {@link ITask} with the root last
+     * @throws IllegalArgumentException if an {@link ITask} depends on itself through its dependents
+     */
+    public static List<ITask> dependencyOrder(ITask root) {
+        return dependencyOrder(root, ITask::getDependents, ITask::getName);
+    }
+
+    /**
+     * Writes out the nodes on the stack from where the cycle starts
+     * @param stack Nodes being walked, most recent first
+     * @param start Node that was reached a second time
+     * @param names Returns the name of a node
+     * @param <T> Node class
+     * @return Returns the cycle like "A -> B -> A"
+     */
+    private static <T> String describeCycle(Deque<Frame<T>> stack, T start, Function<? super T, String> names) {
+        StringBuilder sb = new StringBuilder();
+        boolean inCycle = false;
+        for (Iterator<Frame<T>> frames = stack.descendingIterator(); frames.hasNext(); ) {
+            T node = frames.next().node;
+            inCycle |= node == start;
+            if (inCycle) {
+                sb.append(names.apply(node)).append(" -> ");
+            }
+        }
+        return sb.append(names.apply(start)).toString();
+    }
+
+    /**
+     * A node being walked and the dependents it still has to walk
+     */
+    private static final class Frame<T> {
+        private final T node;
+        private final Iterator<? extends T> remaining;
+
+        private Frame(T node, Collection<? extends T> dependents) {
+            this.node = node;
+            this.remaining = dependents == null ? Collections.<T>emptyIterator() : dependents.iterator();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.gibado.basics.workunit;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface ITask extends ITaskBase {
     /**
@@ -8,4 +10,21 @@ public interface ITask extends ITaskBase {
      * @return Returns any other {@link ITask}s that must be completed before this task can be performed
      */
     Collection<ITask> getDependents();
+
+    /**
+     * Performs the task with the outputs of the {@link ITask}s it depends on and returns an output for the ones that
+     * depend on it.  Override this instead of {@link #performTask(Map)} to hand values along a graph.  The inputs and
+     * output are kept on the {@link ITaskRunner} running the task, not on the task, so runs of an
+     * {@link com.gibado.basics.plan.ExecutionPlan} can share it.  The default calls {@link #performTask(Map)} and has
+     * no output.
+     * @param params {@link Map} containing values based on the {@link com.gibado.basics.sharable.ISharable}s of this
+     *               task
+     * @param inputs Outputs of this task's dependents in the order of {@link #getDependents()}, leaving out dependents
+     *               that didn't produce one
+     * @return Returns the value handed to the tasks that depend on this one, or null if there isn't one
+     */
+    default Object performTask(Map<String, ?> params, List<Object> inputs) {
+        performTask(params);
+        return null;
+    }
 }
@@ -3,6 +3,7 @@ package com.gibado.basics.workunit;
 import com.gibado.basics.sharable.ISharable;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 public interface ITaskBase {
@@ -30,4 +31,13 @@ public interface ITaskBase {
      * @return Returns a list of keys that will be used during this task
      */
     Collection<String> getResourceKeys();
+
+    /**
+     * Returns the keys from {@link #getResourceKeys()} whose values are only read during this task.  These are claimed
+     * with {@link ISharable#claimRead} so other readers can use them at the same time.
+     * @return Returns the keys whose values are only read during this task
+     */
+    default Collection<String> getReadResourceKeys() {
+        return Collections.emptyList();
+    }
 }
@@ -1,11 +1,13 @@
 package com.gibado.basics.workunit;
 
 import com.gibado.basics.IProcessPlant;
+import com.gibado.basics.scheduling.FairShare;
 import com.gibado.basics.sharable.ISharable;
 
 import java.time.Instant;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface ITaskRunner extends Runnable, ITaskBase {
     /**
@@ -20,6 +22,14 @@ public interface ITaskRunner extends Runnable, ITaskBase {
      */
     void setState(State state);
 
+    /**
+     * Atomically moves this {@link ITaskRunner} to the update {@link State} if it is currently in the expected {@link State}
+     * @param expect {@link State} this {@link ITaskRunner} is expected to be in
+     * @param update {@link State} to move to
+     * @return Returns true if the {@link State} was changed
+     */
+    boolean compareAndSetState(State expect, State update);
+
     /**
      * Returns start time in milliseconds
      * @return Returns start time in milliseconds
@@ -46,8 +56,9 @@ public interface ITaskRunner extends Runnable, ITaskBase {
     void setTimeout(long milliseconds);
 
     /**
-     * Returns how much time in milliseconds was taken to start and perform this task
-     * @return Returns how much time in milliseconds was taken to start and perform this task
+     * Returns how much time in milliseconds was taken to perform this task.  Time spent waiting for a thread or for
+     * resources is left out, see {@link #getTimes()} for those.
+     * @return Returns how much time in milliseconds was taken to perform this task
      */
     long getTaskTime();
 
@@ -69,6 +80,28 @@ public interface ITaskRunner extends Runnable, ITaskBase {
      */
     void setTotalTime(long totalTime);
 
+    /**
+     * Returns the nanosecond readings taken as this {@link ITaskRunner} waits, runs and finishes
+     * @return Returns the nanosecond readings taken as this {@link ITaskRunner} waits, runs and finishes
+     */
+    TaskTimes getTimes();
+
+    /**
+     * Returns the value this {@link ITaskRunner} produced for the {@link ITaskRunner}s that depend on it.  It is set
+     * before this {@link ITaskRunner} is complete, so a parent can read it without claiming anything.
+     * @return Returns the value this {@link ITaskRunner} produced, or null if it hasn't produced one
+     */
+    Object getOutput();
+
+    /**
+     * Hands a value to the {@link ITaskRunner}s that depend on this one.  Call it from performTask.  The value can only
+     * be set once and shouldn't be changed afterwards, since every parent may read it at the same time.
+     * @param output Value for the parents to read
+     * @throws IllegalArgumentException if the value is null
+     * @throws IllegalStateException if this {@link ITaskRunner} already has an output
+     */
+    void setOutput(Object output);
+
     /**
      * Returns the {@link Exception} that was thrown by this {@link ITaskRunner} or one of its dependent {@link ITaskRunner}s
      * @return Returns the {@link Exception} that was thrown by this {@link ITaskRunner} or one of its dependent {@link ITaskRunner}s
@@ -95,12 +128,47 @@ public interface ITaskRunner extends Runnable, ITaskBase {
      */
     void addResource(String key, ISharable<?> resource);
 
+    /**
+     * Adds a {@link ISharable} resource that is only read during the performTask method.  It will be claimed with
+     * {@link ISharable#claimRead} so other readers can use it at the same time.
+     * @param key Access key
+     * @param resource {@link ISharable} resource
+     */
+    void addReadResource(String key, ISharable<?> resource);
+
+    /**
+     * Returns the keys of the required resources that are only read
+     * @return Returns the keys of the required resources that are only read
+     */
+    Collection<String> getReadResourceKeys();
+
     /**
      * Returns a map of all the required resources needed to perform this {@link ITaskRunner}s task
      * @return Returns a map of all the required resources needed to perform this {@link ITaskRunner}s task
      */
     Map<String, ISharable<?>> getRequiredMap();
 
+    /**
+     * Returns the required {@link ISharable}s laid out in claim order slots.  This is worked out from
+     * {@link #getRequiredMap()} and {@link #getReadResourceKeys()} and is kept until the resources change.
+     * @return Returns the required {@link ISharable}s laid out in claim order slots
+     */
+    ResourceSlots getResourceSlots();
+
+    /**
+     * Returns the values of required {@link ISharable}s that were claimed for this {@link ITaskRunner} before it was
+     * handed to a thread
+     * @return Returns the claimed values by resource key, or null if nothing has been claimed ahead of time
+     */
+    Map<String, Object> getClaimedParams();
+
+    /**
+     * Hands over the values of required {@link ISharable}s that were claimed for this {@link ITaskRunner} before it was
+     * handed to a thread
+     * @param claimedParams Claimed values by resource key, or null once they have been used
+     */
+    void setClaimedParams(Map<String, Object> claimedParams);
+
     /**
      * Returns all {@link ITaskRunner}s this is dependent on
      * @return Returns all {@link ITaskRunner}s this is dependent on
@@ -122,17 +190,81 @@ public interface ITaskRunner extends Runnable, ITaskBase {
     void setDependents(Collection<ITaskRunner> dependents);
 
     /**
-     * Returns the {@link ITaskRunner} to be executed after this task is complete
-     * @return Returns the {@link ITaskRunner} to be executed after this task is complete
+     * Returns how many dependent {@link ITaskRunner}s still need to finish before this {@link ITaskRunner} can start
+     * @return Returns how many dependent {@link ITaskRunner}s still need to finish
+     */
+    int getPendingDependents();
+
+    /**
+     * Assigns how many dependent {@link ITaskRunner}s still need to finish before this {@link ITaskRunner} can start
+     * @param count Number of unfinished dependent {@link ITaskRunner}s
+     */
+    void setPendingDependents(int count);
+
+    /**
+     * Atomically marks one dependent {@link ITaskRunner} as finished
+     * @return Returns how many dependent {@link ITaskRunner}s are still unfinished
+     */
+    int decrementPendingDependents();
+
+    /**
+     * Returns the expected time from when this {@link ITaskRunner} starts until the last {@link ITaskRunner} waiting on
+     * it finishes, following the longest line of parents
+     * @return Returns the remaining critical path length of this {@link ITaskRunner}
+     */
+    long getCriticalPathLength();
+
+    /**
+     * Assigns the expected time from when this {@link ITaskRunner} starts until the last {@link ITaskRunner} waiting on
+     * it finishes
+     * @param criticalPathLength Remaining critical path length of this {@link ITaskRunner}
+     */
+    void setCriticalPathLength(long criticalPathLength);
+
+    /**
+     * Returns the {@link FairShare} this {@link ITaskRunner} waits for a thread in when fair sharing is on
+     * @return Returns the {@link FairShare} of this {@link ITaskRunner}, or null if it hasn't been given one
+     */
+    FairShare getFairShare();
+
+    /**
+     * Assigns the {@link FairShare} this {@link ITaskRunner} waits for a thread in.  Set it on the root before the
+     * graph is submitted and everything in the graph without a share of its own gets the same one.
+     * @param fairShare {@link FairShare} to wait in
+     */
+    void setFairShare(FairShare fairShare);
+
+    /**
+     * Returns the first {@link ITaskRunner} to be executed after this task is complete
+     * @return Returns the first {@link ITaskRunner} to be executed after this task is complete, or null if there isn't one
      */
     ITaskRunner getParent();
 
     /**
-     * Assigns a {@link ITaskRunner} to be executed after this task is complete
-     * @param parent {@link ITaskRunner} to be executed after this task is complete
+     * Replaces all parents with a single {@link ITaskRunner} to be executed after this task is complete
+     * @param parent {@link ITaskRunner} to be executed after this task is complete, or null to remove all parents
      */
     void setParent(ITaskRunner parent);
 
+    /**
+     * Returns every {@link ITaskRunner} that depends on this task.  All of them are notified when this task is complete.
+     * @return Returns every {@link ITaskRunner} that depends on this task
+     */
+    Collection<ITaskRunner> getParents();
+
+    /**
+     * Adds another {@link ITaskRunner} that depends on this task.  Adding the same parent twice has no effect.
+     * @param parent {@link ITaskRunner} to be notified after this task is complete
+     */
+    void addParent(ITaskRunner parent);
+
+    /**
+     * Returns a future that is completed with this {@link ITaskRunner} once it reaches the DONE {@link State}, or
+     * completed exceptionally with the {@link Exception} thrown once it reaches the ERROR {@link State}
+     * @return Returns a future that is completed once this {@link ITaskRunner} has finished processing
+     */
+    CompletableFuture<ITaskRunner> getCompletion();
+
     /**
      * Returns a reference to the {@link IProcessPlant} that is managing this
      * {@link ITaskRunner}
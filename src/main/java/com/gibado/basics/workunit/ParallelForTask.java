@@ -0,0 +1,280 @@
+package com.gibado.basics.workunit;
+
+import com.gibado.basics.IProcessPlant;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * A {@link WorkUnit} that splits a range of indexes into chunks and runs them on the threads of its
+ * {@link IProcessPlant}, then reduces the chunk results with a combiner.  The thread that picked up the task works on
+ * chunks too, and it doesn't finish the task until every chunk is done.
+ * <p>
+ * Chunk sizes adapt to how long an element takes.  The first chunk is one element, and after that each chunk is sized
+ * to take about {@link #getTargetChunkNanos()} from the measured time per element.  Chunks also shrink as the range runs
+ * out so the threads finish close together.
+ * <p>
+ * {@link com.gibado.basics.sharable.ISharable} resources added to this task are claimed once for the whole task as
+ * usual, and every chunk gets the same claimed values, so chunks running at the same time have to be able to share
+ * them.  Resources that are only read, added with {@link #addReadResource}, fit this best.
+ * @param <R> Class of the result
+ */
+public class ParallelForTask<R> extends WorkUnit {
+    /** Chunk time aimed for when none is set, long enough that handing out a chunk costs little next to running it */
+    public static final long DEFAULT_TARGET_CHUNK_NANOS = 100_000;
+    /** Each new measurement moves the time per element 1 / 2^SMOOTHING_SHIFT of the way toward it */
+    private static final int SMOOTHING_SHIFT = 2;
+    /** Orders chunk results by where they start */
+    private static final Comparator<Chunk<?>> BY_START = Comparator.comparingInt(chunk -> chunk.start);
+
+    private final int start;
+    private final int end;
+    private final R identity;
+    private final RangeBody<R> body;
+    private final BinaryOperator<R> combiner;
+    private volatile long targetChunkNanos = DEFAULT_TARGET_CHUNK_NANOS;
+    private volatile int parallelism;
+    private volatile long nanosPerElement;
+    private volatile R result;
+
+    // State of the run in progress
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final Queue<Chunk<R>> results = new ConcurrentLinkedQueue<>();
+    /** Thread performing the task, unparked when the last chunk running elsewhere is done */
+    private volatile Thread owner;
+
+    /**
+     * Work done on one chunk of the range
+     * @param <R> Class of the result
+     */
+    @FunctionalInterface
+    public interface RangeBody<R> {
+        /**
+         * Works on the indexes from the start up to but not including the end
+         * @param start First index of the chunk
+         * @param end Index just past the last one in the chunk
+         * @param params {@link Map} containing values based on the {@link com.gibado.basics.sharable.ISharable}s added
+         *               to the task
+         * @return Returns the result of the chunk
+         */
+        R apply(int start, int end, Map<String, ?> params);
+    }
+
+    /**
+     * Creates a task that runs the body over the indexes from the start up to but not including the end
+     * @param name Name of the task
+     * @param start First index
+     * @param end Index just past the last one
+     * @param identity Result of an empty range, combining it with any result has to give that result back
+     * @param body Work done on each chunk
+     * @param combiner Combines the results of two chunks, the earlier one first.  It has to be associative.
+     */
+    public ParallelForTask(String name, int start, int end, R identity, RangeBody<R> body, BinaryOperator<R> combiner) {
+        if (end < start) {
+            throw new IllegalArgumentException("Range end " + end + " is before its start " + start);
+        }
+        setName(name);
+        this.start = start;
+        this.end = end;
+        this.identity = identity;
+        this.body = body;
+        this.combiner = combiner;
+    }
+
+    /**
+     * Creates a task that maps every element of a collection and combines the results
+     * @param name Name of the task
+     * @param elements Elements to map, copied to a {@link List} first if they aren't already in one
+     * @param identity Result of an empty collection, combining it with any result has to give that result back
+     * @param mapper Maps an element to its result
+     * @param combiner Combines two results, the earlier one first.  It has to be associative.
+     * @param <E> Class of the elements
+     * @param <R> Class of the result
+     * @return Returns a task over every element of the collection
+     */
+    public static <E, R> ParallelForTask<R> overElements(String name, Collection<? extends E> elements, R identity,
+                                                         Function<? super E, ? extends R> mapper,
+                                                         BinaryOperator<R> combiner) {
+        List<? extends E> list = elements instanceof List ? (List<? extends E>) elements : new ArrayList<>(elements);
+        return new ParallelForTask<>(name, 0, list.size(), identity, (from, to, params) -> {
+            R chunkResult = identity;
+            for (int i = from; i < to; i++) {
+                chunkResult = combiner.apply(chunkResult, mapper.apply(list.get(i)));
+            }
+            return chunkResult;
+        }, combiner);
+    }
+
+    /**
+     * Returns the combined result of every chunk.  It is also this task's {@link #getOutput()}, unless it is null.
+     * @return Returns the combined result, or null if the task hasn't finished
+     */
+    public R getResult() { return result; }
+
+    public long getTargetChunkNanos() { return targetChunkNanos; }
+    public void setTargetChunkNanos(long targetChunkNanos) { this.targetChunkNanos = Math.max(1, targetChunkNanos); }
+
+    /**
+     * Returns the most threads the chunks are spread across
+     * @return Returns the most threads the chunks are spread across, or 0 to use the executor's parallelism
+     */
+    public int getParallelism() { return parallelism; }
+    public void setParallelism(int parallelism) { this.parallelism = Math.max(0, parallelism); }
+
+    /**
+     * Returns the smoothed time an element has taken
+     * @return Returns the nanoseconds an element has taken, or 0 if nothing has been measured yet
+     */
+    public long getNanosPerElement() { return nanosPerElement; }
+
+    @Override
+    public void performTask(Map<String, ?> params) {
+        result = null;
+        next.set(start);
+        failure.set(null);
+        results.clear();
+        owner = Thread.currentThread();
+        int threads = threadCount();
+        if (threads > 1) {
+            IProcessPlant plant = getProcessPlant();
+            // Helpers that start after the range is used up leave right away
+            for (int i = 1; i < threads; i++) {
+                plant.executeFor(this, () -> work(params, threads));
+            }
+        }
+        work(params, threads);
+        awaitChunks();
+        Throwable thrown = failure.get();
+        if (thrown instanceof RuntimeException) {
+            throw (RuntimeException) thrown;
+        } else if (thrown instanceof Error) {
+            throw (Error) thrown;
+        }
+        List<Chunk<R>> chunks = new ArrayList<>(results);
+        chunks.sort(BY_START);
+        R combined = identity;
+        for (Chunk<R> chunk : chunks) {
+            combined = combiner.apply(combined, chunk.result);
+        }
+        result = combined;
+        if (combined != null) {
+            // Parents can also read the result as this task's output
+            setOutput(combined);
+        }
+    }
+
+    /**
+     * Returns how many threads should work on the range
+     * @return Returns 1 to stay on this thread, otherwise the number of threads including this one
+     */
+    private int threadCount() {
+        IProcessPlant plant = getProcessPlant();
+        if (plant == null || end - start < 2) {
+            return 1;
+        }
+        int threads = parallelism > 0 ? parallelism : plant.getExecutor().getParallelism();
+        return Math.max(1, Math.min(threads, end - start));
+    }
+
+    /**
+     * Takes chunks and runs them until the range is used up or a chunk fails
+     * @param params Values claimed for the task
+     * @param threads Threads working on the range
+     */
+    private void work(Map<String, ?> params, int threads) {
+        inFlight.incrementAndGet();
+        try {
+            while (failure.get() == null) {
+                int from = next.get();
+                if (from >= end) {
+                    return;
+                }
+                int to = from + chunkSize(end - from, threads);
+                if (!next.compareAndSet(from, to)) {
+                    continue;
+                }
+                long began = System.nanoTime();
+                R chunkResult = body.apply(from, to, params);
+                measured((System.nanoTime() - began) / (to - from));
+                results.add(new Chunk<>(from, chunkResult));
+            }
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        } finally {
+            if (inFlight.decrementAndGet() == 0) {
+                LockSupport.unpark(owner);
+            }
+        }
+    }
+
+    /**
+     * Returns how many elements the next chunk should have
+     * @param remaining Elements not handed out yet
+     * @param threads Threads working on the range
+     * @return Returns the size of the next chunk, at least 1
+     */
+    private int chunkSize(int remaining, int threads) {
+        long perElement = nanosPerElement;
+        if (perElement == 0) {
+            // Measure before handing out anything bigger
+            return 1;
+        }
+        long size = targetChunkNanos / perElement;
+        // Leave enough for every thread to get a share of the end of the range
+        long share = (remaining + 2L * threads - 1) / (2L * threads);
+        return (int) Math.max(1, Math.min(size, Math.min(share, remaining)));
+    }
+
+    /**
+     * Adds the time an element took in the last chunk to the smoothed time per element
+     * @param nanos Nanoseconds an element took
+     */
+    private void measured(long nanos) {
+        long perElement = Math.max(1, nanos);
+        long current = nanosPerElement;
+        // Racing updates may lose one measurement, which the smoothing makes up for
+        nanosPerElement = current == 0 ? perElement : current + ((perElement - current) >> SMOOTHING_SHIFT);
+    }
+
+    /**
+     * Waits for chunks still running on other threads.  Only chunks that were already taken can be running, so this
+     * doesn't wait on helpers that haven't started.  Parking instead of waiting on a monitor leaves a virtual thread's
+     * carrier free for other work.
+     */
+    private void awaitChunks() {
+        boolean interrupted = false;
+        while (inFlight.get() > 0) {
+            LockSupport.park(this);
+            // Parking returns right away while the flag is set, so it is cleared and put back once the chunks are done
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Result of one chunk and where it started
+     */
+    private static final class Chunk<R> {
+        private final int start;
+        private final R result;
+
+        private Chunk(int start, R result) {
+            this.start = start;
+            this.result = result;
+        }
+    }
+}
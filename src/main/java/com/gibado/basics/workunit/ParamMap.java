@@ -0,0 +1,168 @@
+package com.gibado.basics.workunit;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The parameters handed to {@link ITaskBase#performTask(java.util.Map)}, held in an array with one slot per resource
+ * key.  Keys are interned so a lookup with a String constant is usually an identity check, and a task can look up
+ * {@link #slotOf(String)} once and then use {@link #get(int)} to skip the key lookup entirely.
+ */
+public final class ParamMap extends AbstractMap<String, Object> {
+    /** Marks a slot whose key has been removed by the task */
+    private static final Object ABSENT = new Object();
+
+    private final String[] keys;
+    private final Object[] values;
+
+    ParamMap(String[] keys) {
+        this.keys = keys;
+        this.values = new Object[keys.length];
+    }
+
+    /**
+     * Returns the slot of the given resource key
+     * @param key Resource key
+     * @return Returns the slot of the given resource key, or -1 if this map doesn't have it
+     */
+    public int slotOf(String key) {
+        int slot = findSlot(key);
+        return slot >= 0 && values[slot] != ABSENT ? slot : -1;
+    }
+
+    private int findSlot(String key) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot].equals(key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value in the given slot
+     * @param slot Slot from {@link #slotOf(String)}
+     * @return Returns the value in the given slot
+     */
+    public Object get(int slot) {
+        Object value = values[slot];
+        return value == ABSENT ? null : value;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = key instanceof String ? slotOf((String) key) : -1;
+        return slot < 0 ? null : values[slot];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && slotOf((String) key) >= 0;
+    }
+
+    /**
+     * Replaces the value of a resource key this map already has
+     * @param key Resource key
+     * @param value New value
+     * @return Returns the old value
+     * @throws UnsupportedOperationException if the key isn't one of the resource keys
+     */
+    @Override
+    public Object put(String key, Object value) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            throw new UnsupportedOperationException("Only resource keys can be stored: " + key);
+        }
+        Object old = get(slot);
+        values[slot] = value;
+        return old;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int slot = key instanceof String ? slotOf((String) key) : -1;
+        if (slot < 0) {
+            return null;
+        }
+        Object old = values[slot];
+        values[slot] = ABSENT;
+        return old;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Object value : values) {
+            if (value != ABSENT) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int next = skipAbsent(0);
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < keys.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        last = next;
+                        next = skipAbsent(next + 1);
+                        return new SimpleImmutableEntry<>(keys[last], values[last]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last < 0) {
+                            throw new IllegalStateException();
+                        }
+                        values[last] = ABSENT;
+                        last = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ParamMap.this.size();
+            }
+        };
+    }
+
+    private int skipAbsent(int slot) {
+        while (slot < keys.length && values[slot] == ABSENT) {
+            slot++;
+        }
+        return slot;
+    }
+
+    void set(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    void clearValues() {
+        Arrays.fill(values, null);
+    }
+}
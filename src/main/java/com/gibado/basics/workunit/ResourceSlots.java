@@ -0,0 +1,153 @@
+package com.gibado.basics.workunit;
+
+import com.gibado.basics.sharable.ISharable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link ISharable} resources of an {@link ITaskRunner} worked out ahead of time: every resource key gets a slot,
+ * slots are in claim order and each one knows if it is only read.  Claiming, releasing and checking locks then walk
+ * arrays instead of maps.  This never changes once built, so one can be shared by every run of an execution plan.
+ */
+public final class ResourceSlots {
+    /** Slots for an {@link ITaskRunner} that doesn't need any resources */
+    public static final ResourceSlots EMPTY = new ResourceSlots(new String[0], new ISharable<?>[0], new boolean[0]);
+    /** Parameters of every {@link ITaskRunner} without resources, which have nothing in them that could change */
+    private static final ParamMap NO_PARAMS = new ParamMap(new String[0]);
+    /** Orders required {@link ISharable} entries by their claim order */
+    private static final Comparator<Map.Entry<String, ISharable<?>>> CLAIM_ORDER =
+            Comparator.comparingLong(entry -> entry.getValue().getClaimOrder());
+
+    private final String[] keys;
+    private final ISharable<?>[] sharables;
+    private final boolean[] readOnly;
+
+    private ResourceSlots(String[] keys, ISharable<?>[] sharables, boolean[] readOnly) {
+        this.keys = keys;
+        this.sharables = sharables;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Works out the slots for the given resources
+     * @param requiredMap {@link ISharable} resources by key, may be null
+     * @param readKeys Keys that are only read, may be null
+     * @return Returns the slots for the given resources
+     */
+    public static ResourceSlots of(Map<String, ISharable<?>> requiredMap, Collection<String> readKeys) {
+        if (requiredMap == null || requiredMap.isEmpty()) {
+            return EMPTY;
+        }
+        List<Map.Entry<String, ISharable<?>>> required = new ArrayList<>(requiredMap.entrySet());
+        required.sort(CLAIM_ORDER);
+        String[] keys = new String[required.size()];
+        ISharable<?>[] sharables = new ISharable<?>[required.size()];
+        boolean[] readOnly = new boolean[required.size()];
+        for (int slot = 0; slot < keys.length; slot++) {
+            keys[slot] = required.get(slot).getKey().intern();
+            sharables[slot] = required.get(slot).getValue();
+            readOnly[slot] = readKeys != null && readKeys.contains(keys[slot]);
+        }
+        return new ResourceSlots(keys, sharables, readOnly);
+    }
+
+    /**
+     * Returns the number of slots
+     * @return Returns the number of slots
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the resource key of a slot
+     * @param slot Slot number
+     * @return Returns the resource key of a slot
+     */
+    public String getKey(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Returns the {@link ISharable} of a slot
+     * @param slot Slot number
+     * @return Returns the {@link ISharable} of a slot
+     */
+    public ISharable<?> getSharable(int slot) {
+        return sharables[slot];
+    }
+
+    /**
+     * Returns true if the {@link ISharable} of a slot is only read
+     * @param slot Slot number
+     * @return Returns true if the {@link ISharable} of a slot is only read
+     */
+    public boolean isReadOnly(int slot) {
+        return readOnly[slot];
+    }
+
+    /**
+     * Creates an empty {@link ParamMap} with one slot per resource key.  Slots without any keys all share one map since
+     * there is nothing to put in it.
+     * @return Returns an empty {@link ParamMap} for these slots
+     */
+    public ParamMap newParamMap() {
+        return keys.length == 0 ? NO_PARAMS : new ParamMap(keys);
+    }
+
+    /**
+     * Claims every {@link ISharable} in slot order, either all of them or none of them
+     * @param runner {@link ITaskRunner} claiming the {@link ISharable}s
+     * @param params {@link ParamMap} from {@link #newParamMap()} to put the claimed values in
+     * @return Returns true if everything was claimed, otherwise nothing is left claimed
+     */
+    public boolean claimAll(ITaskRunner runner, ParamMap params) {
+        for (int slot = 0; slot < sharables.length; slot++) {
+            Object value = readOnly[slot] ? sharables[slot].claimRead(runner) : sharables[slot].claim(runner);
+            if (value == null) {
+                // Give back everything claimed so far so nothing is held while waiting
+                for (int claimed = 0; claimed < slot; claimed++) {
+                    sharables[claimed].release(runner);
+                }
+                if (sharables[slot].isLocked()) {
+                    // A null value can come from a claim that went through, which has to be given back too.  Releasing
+                    // only frees a claim this runner holds, the same as in releaseAll.
+                    sharables[slot].release(runner);
+                }
+                params.clearValues();
+                return false;
+            }
+            params.set(slot, value);
+        }
+        return true;
+    }
+
+    /**
+     * Releases every {@link ISharable} claimed by the {@link ITaskRunner}
+     * @param runner {@link ITaskRunner} that claimed the {@link ISharable}s
+     */
+    public void releaseAll(ITaskRunner runner) {
+        for (ISharable<?> sharable : sharables) {
+            if (sharable.isLocked()) {
+                sharable.release(runner);
+            }
+        }
+    }
+
+    /**
+     * Finds an {@link ISharable} that is currently locked in a way that keeps its slot from being claimed
+     * @return Returns a locked {@link ISharable} or null if none of them are locked
+     */
+    public ISharable<?> findLocked() {
+        for (int slot = 0; slot < sharables.length; slot++) {
+            if (readOnly[slot] ? sharables[slot].isReadLocked() : sharables[slot].isLocked()) {
+                return sharables[slot];
+            }
+        }
+        return null;
+    }
+}
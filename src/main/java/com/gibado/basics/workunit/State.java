@@ -19,5 +19,28 @@ public enum State {
     /** Requires a dependent {@link ITaskRunner} to process before continuing */
     WAITING_DEPENDENT,
     /** {@link ITaskRunner} encountered an error */
-    ERROR
+    ERROR;
+
+    /**
+     * Returns true if an {@link ITaskRunner} in this {@link State} is allowed to move to the given {@link State}.  Waiting
+     * states can be re-evaluated freely, a runner is only initiated once it's ready, and DONE and ERROR are final.
+     * @param next {@link State} to move to
+     * @return Returns true if the move is allowed
+     */
+    public boolean canMoveTo(State next) {
+        switch (this) {
+            case DONE:
+            case ERROR:
+                return false;
+            case IN_PROGRESS:
+                return DONE.equals(next) || ERROR.equals(next);
+            case INITIATED:
+                return IN_PROGRESS.equals(next) || ERROR.equals(next);
+            case READY:
+            case WAITING_RESOURCE:
+                return !DONE.equals(next) && !IN_PROGRESS.equals(next);
+            default:
+                return !DONE.equals(next) && !IN_PROGRESS.equals(next) && !INITIATED.equals(next);
+        }
+    }
 }
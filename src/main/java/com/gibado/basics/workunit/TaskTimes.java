@@ -0,0 +1,101 @@
+package com.gibado.basics.workunit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link System#nanoTime()} readings taken as an {@link ITaskRunner} moves through a run.  Each one is written by the
+ * thread holding the {@link ITaskRunner} at that point, and handing it to the next thread publishes it.
+ * <ul>
+ *     <li>ready: its dependents are done and it starts waiting for resources</li>
+ *     <li>queued: its resources are claimed and it is handed to the executor</li>
+ *     <li>started: a thread picks it up</li>
+ *     <li>executed: it starts performing its task</li>
+ *     <li>ended: it is no longer processing</li>
+ * </ul>
+ * The thread that picked it up is kept alongside, since whatever finishes it last, like spawned work, may be another.
+ */
+public final class TaskTimes {
+    /** Value of a reading that hasn't been taken */
+    public static final long UNSET = Long.MIN_VALUE;
+
+    private long ready = UNSET;
+    private long queued = UNSET;
+    private long started = UNSET;
+    private long executed = UNSET;
+    private long ended = UNSET;
+    private long threadId = UNSET;
+    private String threadName;
+
+    public long getReady() { return ready; }
+    public void setReady(long nanoTime) { this.ready = nanoTime; }
+
+    public long getQueued() { return queued; }
+    public void setQueued(long nanoTime) { this.queued = nanoTime; }
+
+    public long getStarted() { return started; }
+    public void setStarted(long nanoTime) { this.started = nanoTime; }
+
+    public long getExecuted() { return executed; }
+    public void setExecuted(long nanoTime) { this.executed = nanoTime; }
+
+    public long getEnded() { return ended; }
+    public void setEnded(long nanoTime) { this.ended = nanoTime; }
+
+    /**
+     * Returns the id of the thread that picked the {@link ITaskRunner} up
+     * @return Returns the id of the thread that ran the task, or {@link #UNSET} if the task never started
+     */
+    public long getThreadId() { return threadId; }
+
+    /**
+     * Returns the name of the thread that picked the {@link ITaskRunner} up
+     * @return Returns the name of the thread that ran the task, or null if the task never started
+     */
+    public String getThreadName() { return threadName; }
+
+    /**
+     * Keeps which thread picked the {@link ITaskRunner} up
+     * @param thread Thread that is running the task
+     */
+    public void setThread(Thread thread) {
+        this.threadId = thread.getId();
+        this.threadName = thread.getName();
+    }
+
+    /**
+     * Returns the nanoseconds spent waiting for a thread after the resources were claimed
+     * @return Returns the nanoseconds spent waiting for a thread, or {@link #UNSET} if the task never started
+     */
+    public long getQueueWait() {
+        return queued == UNSET || started == UNSET ? UNSET : Math.max(0, started - queued);
+    }
+
+    /**
+     * Returns the nanoseconds spent waiting for resources, both before being handed to the executor and, if they had
+     * to be claimed there, on the thread
+     * @return Returns the nanoseconds spent waiting for resources, or {@link #UNSET} if the task never executed
+     */
+    public long getResourceWait() {
+        if (ready == UNSET || queued == UNSET || started == UNSET || executed == UNSET) {
+            return UNSET;
+        }
+        return Math.max(0, queued - ready) + Math.max(0, executed - started);
+    }
+
+    /**
+     * Returns the nanoseconds spent performing the task
+     * @return Returns the nanoseconds spent performing the task, or {@link #UNSET} if the task never executed
+     */
+    public long getExecute() {
+        return executed == UNSET || ended == UNSET ? UNSET : Math.max(0, ended - executed);
+    }
+
+    /**
+     * Returns the milliseconds since the ready reading
+     * @param nanoTime Current {@link System#nanoTime()}
+     * @return Returns the milliseconds since the ready reading
+     */
+    public long millisSinceReady(long nanoTime) {
+        return TimeUnit.NANOSECONDS.toMillis(nanoTime - ready);
+    }
+}
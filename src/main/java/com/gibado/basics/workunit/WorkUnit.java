@@ -1,30 +1,46 @@
 package com.gibado.basics.workunit;
 
 import com.gibado.basics.IProcessPlant;
+import com.gibado.basics.scheduling.FairShare;
 import com.gibado.basics.sharable.ISharable;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This object represents a single unit of work.
  */
 public abstract class WorkUnit implements ITaskRunner {
     private String name = "Default WorkUnit";
-    private State state;
-    private ITaskRunner parent;
+    private final AtomicReference<State> state = new AtomicReference<>();
+    private final List<ITaskRunner> parents = new ArrayList<>(1);
     private Collection<ITaskRunner> dependents;
+    private final AtomicInteger pendingDependents = new AtomicInteger();
+    private final CompletableFuture<ITaskRunner> completion = new CompletableFuture<>();
+    private volatile long criticalPathLength;
+    private volatile FairShare fairShare;
     private Map<String, ISharable<?>> requiredMap;
+    private volatile ResourceSlots resourceSlots;
+    private volatile Map<String, Object> claimedParams;
+    private final Set<String> readResourceKeys = new HashSet<>();
     private Instant startTime = null;
     private long taskTime = -1;
     private long totalTime = -1;
+    private final TaskTimes times = new TaskTimes();
     private long timeout = 60000; // 1 minute
 //    private long timeout = NO_TIMEOUT;
     private IProcessPlant processPlant;
     private Exception exceptionThrown;
+    private volatile Object output;
 
     /**
      * Creates a one off task
@@ -57,8 +73,9 @@ public abstract class WorkUnit implements ITaskRunner {
         }
     }
 
-    public State getState() { return this.state; }
-    public void setState(State state) { this.state = state; }
+    public State getState() { return this.state.get(); }
+    public void setState(State state) { this.state.set(state); }
+    public boolean compareAndSetState(State expect, State update) { return this.state.compareAndSet(expect, update); }
 
     public Instant getStartTime() { return startTime; }
     public void setStartTime(Instant startTime) { this.startTime = startTime; }
@@ -72,26 +89,85 @@ public abstract class WorkUnit implements ITaskRunner {
     public long getTotalTime() { return totalTime; }
     public void setTotalTime(long totalTime) { this.totalTime = totalTime; }
 
+    public TaskTimes getTimes() { return times; }
+
     public void setProcessPlant(IProcessPlant processPlant) { this.processPlant = processPlant; }
     public IProcessPlant getProcessPlant() { return this.processPlant; }
 
-    public ITaskRunner getParent() { return parent; }
-    public void setParent(ITaskRunner parent) { this.parent = parent; }
+    public int getPendingDependents() { return pendingDependents.get(); }
+    public void setPendingDependents(int count) { pendingDependents.set(count); }
+    public int decrementPendingDependents() { return pendingDependents.decrementAndGet(); }
+
+    public long getCriticalPathLength() { return criticalPathLength; }
+    public void setCriticalPathLength(long criticalPathLength) { this.criticalPathLength = criticalPathLength; }
+
+    public FairShare getFairShare() { return fairShare; }
+    public void setFairShare(FairShare fairShare) { this.fairShare = fairShare; }
+
+    public CompletableFuture<ITaskRunner> getCompletion() { return completion; }
+
+    public ITaskRunner getParent() { return parents.isEmpty() ? null : parents.get(0); }
+    public void setParent(ITaskRunner parent) {
+        parents.clear();
+        addParent(parent);
+    }
+    public Collection<ITaskRunner> getParents() { return parents; }
+    public void addParent(ITaskRunner parent) {
+        if (parent != null && !parents.contains(parent)) {
+            parents.add(parent);
+        }
+    }
 
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
 
+    public Object getOutput() { return this.output; }
+    public void setOutput(Object output) {
+        WorkUnitHelper.verifyOutput(this, output);
+        this.output = output;
+    }
+
+    /**
+     * Returns the output of one of this {@link WorkUnit}'s dependents
+     * @param dependent Dependent {@link ITaskRunner} that produced the output
+     * @param type Class the output is expected to be
+     * @param <T> Class of the output
+     * @return Returns the output of the dependent, or null if it didn't produce one
+     * @throws ClassCastException if the output isn't of the given class
+     */
+    protected <T> T getInput(ITaskRunner dependent, Class<T> type) { return type.cast(dependent.getOutput()); }
+
+    /**
+     * Returns the outputs of this {@link WorkUnit}'s dependents in the order they were given to
+     * {@link #setDependents(Collection)}
+     * @param type Class every output is expected to be
+     * @param <T> Class of the outputs
+     * @return Returns the outputs of the dependents, leaving out dependents that didn't produce one
+     * @throws ClassCastException if an output isn't of the given class
+     */
+    protected <T> List<T> getInputs(Class<T> type) { return WorkUnitHelper.getInputs(this, type); }
+
     public Exception getExceptionThrown() { return this.exceptionThrown; }
     public void setExceptionThrown(Exception e) { this.exceptionThrown = e; }
 
     public Map<String, ISharable<?>> getRequiredMap() { return this.requiredMap; }
+    public ResourceSlots getResourceSlots() {
+        ResourceSlots slots = this.resourceSlots;
+        if (slots == null) {
+            slots = ResourceSlots.of(requiredMap, readResourceKeys);
+            this.resourceSlots = slots;
+        }
+        return slots;
+    }
+    public Map<String, Object> getClaimedParams() { return this.claimedParams; }
+    public void setClaimedParams(Map<String, Object> claimedParams) { this.claimedParams = claimedParams; }
 
     public Collection<ITaskRunner> getDependents() { return dependents; }
 
     public void setDependents(Collection<ITaskRunner> dependents) {
         this.dependents = dependents;
         for (ITaskRunner dependent : dependents) {
-            dependent.setParent(this);
+            dependent.addParent(this);
         }
     }
 
@@ -113,12 +189,26 @@ public abstract class WorkUnit implements ITaskRunner {
     public void addAllResources(Map<String, ISharable<?>> resourceMap) {
         this.requiredMap = WorkUnitHelper.verifyMap(this.requiredMap);
         this.requiredMap.putAll(resourceMap);
+        this.resourceSlots = null;
     }
 
     @Override
     public void addResource(String key, ISharable<?> resource) {
         this.requiredMap = WorkUnitHelper.verifyMap(this.requiredMap);
         requiredMap.put(key, resource);
+        this.resourceSlots = null;
+    }
+
+    @Override
+    public void addReadResource(String key, ISharable<?> resource) {
+        addResource(key, resource);
+        readResourceKeys.add(key);
+        this.resourceSlots = null;
+    }
+
+    @Override
+    public Collection<String> getReadResourceKeys() {
+        return readResourceKeys;
     }
 
     @Override
@@ -2,11 +2,18 @@ package com.gibado.basics.workunit;
 
 import com.gibado.basics.IProcessPlant;
 import com.gibado.basics.sharable.ISharable;
+import com.gibado.basics.sharable.ReleaseWaiter;
 
-import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Helper class for working in
@@ -21,50 +28,99 @@ public class WorkUnitHelper {
      * @param runner {@link ITaskRunner} to attempt to perform its task
      */
     public static void runLogic(ITaskRunner runner) {
-        // Check if this task has already been done
-        if (State.DONE.equals(runner.getState())) {
+        // Only one thread gets to initiate this task, anything done or already running is left alone
+        // Sharables may have been claimed before this runner was handed to a thread
+        Map<String, Object> params = runner.getClaimedParams();
+        runner.setClaimedParams(null);
+        if (!initiate(runner)) {
+            if (params != null) {
+                releaseAll(runner);
+            }
             return;
         }
-        Instant startTime = Instant.now();
-        runner.setStartTime(startTime);
-        long elapsedTime = Duration.between(runner.getStartTime(), Instant.now()).toMillis();
-        runner.setState(State.INITIATED);
-        Map<String, Object> params = null;
+        TaskTimes times = runner.getTimes();
+        long now = System.nanoTime();
+        times.setStarted(now);
+        times.setThread(Thread.currentThread());
+        // Time spent waiting to be dispatched for resources counts toward the timeout
+        if (times.getReady() == TaskTimes.UNSET) {
+            times.setReady(now);
+        }
+        if (times.getQueued() == TaskTimes.UNSET) {
+            times.setQueued(now);
+        }
+        if (runner.getStartTime() == null) {
+            runner.setStartTime(Instant.now());
+        }
+        long elapsedTime = times.millisSinceReady(now);
+        ParamMap reusableParams = null;
+        ReleaseWaiter signaled = null;
         try {
             boolean workDone = false;
             long timeout = runner.getTimeout();
-            while (!workDone && (timeout ==-1 || elapsedTime < timeout)) {
-                // Check if Sharables are available
-                if (areRequiredAvailable(runner)) {
-                    // claim Sharables
-                    params = claimAllRequired(runner);
-                    // check if we got the requiredMap
-                    if (!containsNull(params)) {
-                        runner.setState(State.IN_PROGRESS);
-                        runner.performTask(params);
-                        runner.setState(State.DONE);
-                        workDone = true;
+            while (!workDone && (timeout == NO_TIMEOUT || elapsedTime < timeout)) {
+                // Check if Sharables are available and claim them
+                if (params == null && areRequiredAvailable(runner)) {
+                    if (reusableParams == null) {
+                        reusableParams = runner.getResourceSlots().newParamMap();
+                    }
+                    params = claimAllRequired(runner, reusableParams);
+                }
+                // check if we got the requiredMap
+                if (params != null) {
+                    if (signaled != null) {
+                        // Other readers waiting on the same release may be able to share it
+                        signaled.passOn();
+                        signaled = null;
+                    }
+                    moveState(runner, State.INITIATED, State.IN_PROGRESS);
+                    times.setExecuted(System.nanoTime());
+                    runner.performTask(params);
+                    IProcessPlant plant = runner.getProcessPlant();
+                    if (plant == null || !plant.hasSpawned(runner)) {
+                        moveState(runner, State.IN_PROGRESS, State.DONE);
                     }
+                    workDone = true;
                     // release requiredMap for others to use
                     releaseAll(runner);
                 }
-                elapsedTime = Duration.between(startTime, Instant.now()).toMillis();
+                if (!workDone) {
+                    if (signaled != null) {
+                        // The release that woke this thread wasn't used so let the next waiter try
+                        signaled.passOn();
+                    }
+                    elapsedTime = times.millisSinceReady(System.nanoTime());
+                    signaled = awaitRequired(runner, timeout == NO_TIMEOUT ? NO_TIMEOUT : timeout - elapsedTime);
+                }
+                elapsedTime = times.millisSinceReady(System.nanoTime());
             }
             if (!workDone) {
+                if (signaled != null) {
+                    signaled.passOn();
+                }
                 // Timeout reached
                 throw new IllegalStateException("Could not grab required Sharable(s) in time: " + requiredMapToString(runner.getRequiredMap()));
             }
         } catch (Exception e) {
             runner.setExceptionThrown(e);
-            runner.setState(State.ERROR);
+            fail(runner);
             runner.exceptionHandling(e, params);
             throw e;
+        } catch (Error e) {
+            // The runner can't finish either way so record the error as the reason
+            IllegalStateException exception = new IllegalStateException(e);
+            runner.setExceptionThrown(exception);
+            fail(runner);
+            runner.exceptionHandling(exception, params);
+            throw e;
         } finally {
             // Make sure Sharables have been released
             releaseAll(runner);
-            // Update times
-            Instant endTime = Instant.now();
-            long taskTime = Duration.between(runner.getStartTime(), endTime).toMillis();
+            // Update times, a task that never got to execute is charged for the time it spent trying
+            long endTime = System.nanoTime();
+            times.setEnded(endTime);
+            long taskStart = times.getExecuted() == TaskTimes.UNSET ? times.getReady() : times.getExecuted();
+            long taskTime = TimeUnit.NANOSECONDS.toMillis(endTime - taskStart);
             runner.setTaskTime(taskTime);
             runner.setTotalTime(taskTime + getTotalDependentTime(runner));
             // Call back to trigger parent WorkUnit
@@ -87,17 +143,24 @@ public class WorkUnitHelper {
     }
 
     /**
-     * Attempts to claims all {@link ISharable}s and stores the values in a parameter map.  If a {@link ISharable} wasn't
-     * claimed then the value in the {@link Map} will be null.
+     * Attempts to claim all {@link ISharable}s and stores the values in a parameter map.  The {@link ISharable}s are
+     * claimed in ascending {@link ISharable#getClaimOrder()} and either all of them are claimed or none of them are.
+     * Keys listed in {@link ITaskRunner#getReadResourceKeys()} are claimed for reading.
      * @param runner {@link ITaskRunner} to attempt to claim {@link ISharable} resources for
-     * @return Returns the Objects from the {@link ISharable} map
+     * @return Returns the Objects from the {@link ISharable} map, or null if one of them could not be claimed
      */
-    public static Map<String, Object> claimAllRequired(ITaskRunner runner) {
-        Map<String, Object> params = new HashMap<>();
-        for (Map.Entry<String, ISharable<?>> entry : runner.getRequiredMap().entrySet()) {
-            params.put(entry.getKey(), entry.getValue().claim(runner));
-        }
-        return params;
+    public static ParamMap claimAllRequired(ITaskRunner runner) {
+        return claimAllRequired(runner, runner.getResourceSlots().newParamMap());
+    }
+
+    /**
+     * Attempts to claim all {@link ISharable}s into a {@link ParamMap} that can be reused between attempts
+     * @param runner {@link ITaskRunner} to attempt to claim {@link ISharable} resources for
+     * @param params {@link ParamMap} made by the {@link ITaskRunner#getResourceSlots()} to store the values in
+     * @return Returns the given {@link ParamMap} filled in, or null if one of them could not be claimed
+     */
+    public static ParamMap claimAllRequired(ITaskRunner runner, ParamMap params) {
+        return runner.getResourceSlots().claimAll(runner, params) ? params : null;
     }
 
     /**
@@ -105,11 +168,7 @@ public class WorkUnitHelper {
      * @param runner {@link ITaskRunner} release the claims on the {@link ISharable} resources for
      */
     public static void releaseAll(ITaskRunner runner) {
-        for (ISharable<?> sharable : runner.getRequiredMap().values()) {
-            if (sharable.isLocked()) {
-                sharable.release(runner);
-            }
-        }
+        runner.getResourceSlots().releaseAll(runner);
     }
 
     /**
@@ -119,14 +178,70 @@ public class WorkUnitHelper {
      * @return Returns true if the {@link ISharable}s are available.
      */
     public static boolean areRequiredAvailable(ITaskRunner runner) {
-        if (runner.getRequiredMap() != null) {
-            for (ISharable sharable : runner.getRequiredMap().values()) {
-                if (sharable.isLocked()) {
-                    return false;
-                }
+        return findLocked(runner) == null;
+    }
+
+    /**
+     * Parks the current thread until a locked {@link ISharable} required by the given {@link ITaskRunner} is released or
+     * the timeout runs out.  Waiting threads are woken in the order they started waiting.
+     * @param runner {@link ITaskRunner} with required {@link ISharable} resources
+     * @param timeout Most time in milliseconds to wait or {@link #NO_TIMEOUT} to wait until released
+     * @return Returns the {@link ReleaseWaiter} that was signaled by a release, or null if the wait ended without one
+     */
+    public static ReleaseWaiter awaitRequired(ITaskRunner runner, long timeout) {
+        ISharable<?> locked = findLocked(runner);
+        if (locked == null || (timeout != NO_TIMEOUT && timeout <= 0)) {
+            return null;
+        }
+        final Thread waitingThread = Thread.currentThread();
+        ReleaseWaiter waiter = locked.awaitRelease(() -> LockSupport.unpark(waitingThread));
+        // Check again now that the waiter is registered so a release in between isn't missed
+        if (findLocked(runner) == locked) {
+            try {
+                // Lets a ForkJoinPool bring in a spare thread while this one is parked
+                ForkJoinPool.managedBlock(new ReleaseBlocker(waiter, timeout));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
-        return true;
+        return waiter.cancel() ? null : waiter;
+    }
+
+    /**
+     * Parks the current thread until a {@link ReleaseWaiter} is signaled, the timeout passes or the thread is interrupted
+     */
+    private static class ReleaseBlocker implements ForkJoinPool.ManagedBlocker {
+        private final ReleaseWaiter waiter;
+        private final long deadline;
+
+        private ReleaseBlocker(ReleaseWaiter waiter, long timeout) {
+            this.waiter = waiter;
+            this.deadline = timeout == NO_TIMEOUT ? NO_TIMEOUT : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        }
+
+        @Override
+        public boolean block() {
+            if (deadline == NO_TIMEOUT) {
+                LockSupport.park(waiter.getSharable());
+            } else {
+                LockSupport.parkNanos(waiter.getSharable(), deadline - System.nanoTime());
+            }
+            return isReleasable() || Thread.currentThread().isInterrupted();
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return !waiter.isWaiting() || (deadline != NO_TIMEOUT && deadline - System.nanoTime() <= 0);
+        }
+    }
+
+    /**
+     * Finds a required {@link ISharable} that is currently locked in a way that keeps the {@link ITaskRunner} out
+     * @param runner {@link ITaskRunner} with required {@link ISharable} resources
+     * @return Returns a locked {@link ISharable} or null if none of them are locked
+     */
+    public static ISharable<?> findLocked(ITaskRunner runner) {
+        return runner.getResourceSlots().findLocked();
     }
 
     /**
@@ -149,7 +264,8 @@ public class WorkUnitHelper {
     }
 
     /**
-     * Returns the amount of time the dependents took to complete their tasks as a collective
+     * Returns the amount of time the dependents took to complete their tasks as a collective.  A dependent shared by
+     * several parents is only counted by its first parent so the root's total counts every task once.
      * @param runner {@link ITaskRunner} with dependent {@link ITaskRunner}(s)
      * @return Returns the amount of time the dependents took to complete their tasks as a collective
      */
@@ -157,21 +273,24 @@ public class WorkUnitHelper {
         long dependentTime = 0;
         if (runner.getDependents() != null) {
             for (ITaskRunner dependent : runner.getDependents()) {
-                dependentTime += dependent.getTotalTime();
+                if (dependent.getParent() == runner && dependent.getTotalTime() > 0) {
+                    dependentTime += dependent.getTotalTime();
+                }
             }
         }
         return dependentTime;
     }
 
     /**
-     * Finds the most important {@link State} held by one of the dependents
+     * Finds the most important {@link State} held by one of the dependents.  Dependents are not re-evaluated, only their
+     * current {@link State} is read.
      * @param runner {@link ITaskRunner} with dependent {@link ITaskRunner}(s)
      * @return Returns the highest importance {@link State} held by one of the dependents
      */
     public static State getHighestPriorityState(ITaskRunner runner) {
         State result = State.DONE;
         for (ITaskRunner dependent : runner.getDependents()) {
-            State dependentState = updateState(dependent);
+            State dependentState = dependent.getState();
             switch (dependentState) {
                 case WAITING_DEPENDENT:
                 case WAITING_RESOURCE:
@@ -196,16 +315,37 @@ public class WorkUnitHelper {
     }
 
     /**
-     * Updates and returns the latest state of this {@link ITaskRunner}.
+     * Updates and returns the latest state of this {@link ITaskRunner}.  Only a waiting or ready {@link ITaskRunner} is
+     * re-evaluated and the new {@link State} is set with compare-and-set, so nothing is locked while checking.
      * @param runner {@link ITaskRunner} with a task
      * @return Returns the current state of this {@link ITaskRunner}.
      */
-    public static synchronized State updateState(ITaskRunner runner) {
-        final State state = runner.getState();
-        if (State.DONE.equals(state) || State.ERROR.equals(state)) {
-            // Task has already been attempted or completed
-            return state;
+    public static State updateState(ITaskRunner runner) {
+        State state = runner.getState();
+        while (true) {
+            if (State.DONE.equals(state) || State.ERROR.equals(state)
+                    || State.INITIATED.equals(state) || State.IN_PROGRESS.equals(state)) {
+                // Task has already been attempted, completed, or a thread is working on it
+                return state;
+            }
+            State next = evaluateState(runner);
+            if (next.equals(state) || runner.compareAndSetState(state, next)) {
+                if (State.ERROR.equals(next) && !next.equals(state)) {
+                    runner.exceptionHandling(runner.getExceptionThrown(), null);
+                }
+                return next;
+            }
+            // Another thread moved this runner first so check again
+            state = runner.getState();
         }
+    }
+
+    /**
+     * Works out which {@link State} a waiting or ready {@link ITaskRunner} should be in
+     * @param runner {@link ITaskRunner} with a task
+     * @return Returns the {@link State} the {@link ITaskRunner} should be in
+     */
+    private static State evaluateState(ITaskRunner runner) {
         // Check for dependents have to be completed
         if (runner.getDependents() != null) {
             // See if we care about any dependent states
@@ -218,13 +358,10 @@ public class WorkUnitHelper {
                 case INITIATED:
                 case IN_PROGRESS:
                     // Wait for all dependents to be done
-                    runner.setState(State.WAITING_DEPENDENT);
-                    return runner.getState();
+                    return State.WAITING_DEPENDENT;
                 case ERROR:
                     // If a dependent found an error then this task cannot be processed
-                    runner.setState(State.ERROR);
-                    runner.exceptionHandling(runner.getExceptionThrown(), null);
-                    return runner.getState();
+                    return State.ERROR;
                 case DONE:
                     // This dependent is done
                     break;
@@ -232,13 +369,59 @@ public class WorkUnitHelper {
         }
         // Check if resources are available
         if (!WorkUnitHelper.areRequiredAvailable(runner)) {
-            runner.setState(State.WAITING_RESOURCE);
-            return runner.getState();
+            return State.WAITING_RESOURCE;
         }
 
         // Nothing in the way of starting this task
-        runner.setState(State.READY);
-        return runner.getState();
+        return State.READY;
+    }
+
+    /**
+     * Moves a ready {@link ITaskRunner} into the INITIATED {@link State}.  Only one caller can succeed.
+     * @param runner {@link ITaskRunner} with a task
+     * @return Returns true if this caller initiated the {@link ITaskRunner}
+     */
+    public static boolean initiate(ITaskRunner runner) {
+        State state = runner.getState();
+        while (state != null && state.canMoveTo(State.INITIATED)) {
+            if (runner.compareAndSetState(state, State.INITIATED)) {
+                return true;
+            }
+            state = runner.getState();
+        }
+        return false;
+    }
+
+    /**
+     * Moves an {@link ITaskRunner} from one {@link State} to another
+     * @param runner {@link ITaskRunner} with a task
+     * @param expect {@link State} the {@link ITaskRunner} must currently be in
+     * @param update {@link State} to move to
+     * @throws IllegalStateException if the move isn't allowed or the {@link ITaskRunner} wasn't in the expected {@link State}
+     */
+    public static void moveState(ITaskRunner runner, State expect, State update) {
+        if (!expect.canMoveTo(update)) {
+            throw new IllegalStateException("Cannot move " + runner.getName() + " from " + expect + " to " + update);
+        }
+        if (!runner.compareAndSetState(expect, update)) {
+            throw new IllegalStateException("Expected " + runner.getName() + " to be " + expect + " but was " + runner.getState());
+        }
+    }
+
+    /**
+     * Moves an {@link ITaskRunner} into the ERROR {@link State} unless it has already finished
+     * @param runner {@link ITaskRunner} with a task
+     * @return Returns true if this caller moved the {@link ITaskRunner} into the ERROR {@link State}
+     */
+    public static boolean fail(ITaskRunner runner) {
+        State state = runner.getState();
+        while (state == null || state.canMoveTo(State.ERROR)) {
+            if (runner.compareAndSetState(state, State.ERROR)) {
+                return true;
+            }
+            state = runner.getState();
+        }
+        return false;
     }
 
     /**
@@ -249,12 +432,29 @@ public class WorkUnitHelper {
         runner.getProcessPlant().signalComplete(runner);
     }
 
+    /**
+     * Completes the {@link ITaskRunner#getCompletion()} future if the {@link ITaskRunner} has finished processing
+     * @param runner {@link ITaskRunner} with a task
+     */
+    public static void complete(ITaskRunner runner) {
+        State state = runner.getState();
+        if (State.DONE.equals(state)) {
+            runner.getCompletion().complete(runner);
+        } else if (State.ERROR.equals(state)) {
+            Exception exception = runner.getExceptionThrown();
+            if (exception == null) {
+                exception = new IllegalStateException(runner.getName() + " could not be completed");
+            }
+            runner.getCompletion().completeExceptionally(exception);
+        }
+    }
+
     /**
      * Returns true if this {@link ITaskRunner} already has a thread working on it
      * @param runner {@link ITaskRunner} with a task
      * @return Returns true if this {@link ITaskRunner} already has a thread working on it
      */
-    public static synchronized boolean isThreadClaimed(ITaskRunner runner) {
+    public static boolean isThreadClaimed(ITaskRunner runner) {
         return runner.getStartTime() != null;
     }
 
@@ -271,6 +471,45 @@ public class WorkUnitHelper {
         return sb.toString();
     }
 
+    /**
+     * Checks that an output can be set on an {@link ITaskRunner}
+     * @param runner {@link ITaskRunner} the output is for
+     * @param output Value about to be set
+     * @throws IllegalArgumentException if the value is null
+     * @throws IllegalStateException if the {@link ITaskRunner} already has an output
+     */
+    public static void verifyOutput(ITaskRunner runner, Object output) {
+        if (output == null) {
+            throw new IllegalArgumentException(runner.getName() + " can't output null");
+        }
+        if (runner.getOutput() != null) {
+            throw new IllegalStateException(runner.getName() + " already has an output");
+        }
+    }
+
+    /**
+     * Returns the outputs of the given {@link ITaskRunner}'s dependents in the order the dependents were given
+     * @param runner {@link ITaskRunner} whose dependents' outputs are wanted
+     * @param type Class every output is expected to be
+     * @param <T> Class of the outputs
+     * @return Returns the outputs of the dependents, leaving out dependents that didn't produce one
+     * @throws ClassCastException if an output isn't of the given class
+     */
+    public static <T> List<T> getInputs(ITaskRunner runner, Class<T> type) {
+        Collection<ITaskRunner> dependents = runner.getDependents();
+        if (dependents == null || dependents.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<T> inputs = new ArrayList<>(dependents.size());
+        for (ITaskRunner dependent : dependents) {
+            Object output = dependent.getOutput();
+            if (output != null) {
+                inputs.add(type.cast(output));
+            }
+        }
+        return inputs;
+    }
+
     /**
      * If the given map is null then a new instantiated map is returned, otherwise the given map is returned
      * @param map Map to check
@@ -2,28 +2,45 @@ package com.gibado.basics.workunit;
 
 
 import com.gibado.basics.IProcessPlant;
+import com.gibado.basics.scheduling.FairShare;
 import com.gibado.basics.sharable.ISharable;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A basic object that handles everything other than the actual {@link ITask}
  */
 public class WorkUnitShell implements ITaskRunner {
     private ITask task;
-    private State state;
+    private final AtomicReference<State> state = new AtomicReference<>(State.READY);
     private Instant startTime;
     
     private long timeout = 60000; // 1 minute
     private long taskTime = -1;
     private long totalTime = -1;
+    private final TaskTimes times = new TaskTimes();
     private Exception exceptionThrown;
+    private volatile Object output;
     private Map<String, ISharable<?>> requiredMap;
+    private volatile ResourceSlots resourceSlots;
+    private volatile Map<String, Object> claimedParams;
+    private final Set<String> readResourceKeys = new HashSet<>();
     private Collection<ITaskRunner> dependents;
-    private ITaskRunner parent;
+    private final AtomicInteger pendingDependents = new AtomicInteger();
+    private final CompletableFuture<ITaskRunner> completion = new CompletableFuture<>();
+    private volatile long criticalPathLength;
+    private volatile FairShare fairShare;
+    private final List<ITaskRunner> parents = new ArrayList<>(1);
     private IProcessPlant processPlant;
 
     public WorkUnitShell(ITask task) {
@@ -37,7 +54,10 @@ public class WorkUnitShell implements ITaskRunner {
 
     @Override
     public void performTask(Map<String, ?> params) {
-        task.performTask(params);
+        Object output = task.performTask(params, WorkUnitHelper.getInputs(this, Object.class));
+        if (output != null) {
+            setOutput(output);
+        }
     }
 
     @Override
@@ -47,7 +67,7 @@ public class WorkUnitShell implements ITaskRunner {
 
     @Override
     public State getState() {
-        return state;
+        return state.get();
     }
 
     @Override
@@ -62,7 +82,12 @@ public class WorkUnitShell implements ITaskRunner {
 
     @Override
     public void setState(State state) {
-        this.state = state;
+        this.state.set(state);
+    }
+
+    @Override
+    public boolean compareAndSetState(State expect, State update) {
+        return this.state.compareAndSet(expect, update);
     }
 
     @Override
@@ -95,6 +120,22 @@ public class WorkUnitShell implements ITaskRunner {
         this.totalTime = totalTime;
     }
 
+    @Override
+    public TaskTimes getTimes() {
+        return times;
+    }
+
+    @Override
+    public Object getOutput() {
+        return output;
+    }
+
+    @Override
+    public void setOutput(Object output) {
+        WorkUnitHelper.verifyOutput(this, output);
+        this.output = output;
+    }
+
     @Override
     public Exception getExceptionThrown() {
         return this.exceptionThrown;
@@ -109,17 +150,47 @@ public class WorkUnitShell implements ITaskRunner {
     public void addAllResources(Map<String, ISharable<?>> resourceMap) {
         this.requiredMap = WorkUnitHelper.verifyMap(this.requiredMap);
         this.requiredMap.putAll(resourceMap);
+        this.resourceSlots = null;
     }
 
     @Override
     public void addResource(String key, ISharable<?> resource) {
         requiredMap = WorkUnitHelper.verifyMap(requiredMap);
         requiredMap.put(key, resource);
+        this.resourceSlots = null;
+    }
+
+    @Override
+    public void addReadResource(String key, ISharable<?> resource) {
+        addResource(key, resource);
+        readResourceKeys.add(key);
+        this.resourceSlots = null;
+    }
+
+    @Override
+    public Collection<String> getReadResourceKeys() {
+        return this.readResourceKeys;
     }
 
     @Override
     public Map<String, ISharable<?>> getRequiredMap() { return this.requiredMap; }
 
+    @Override
+    public ResourceSlots getResourceSlots() {
+        ResourceSlots slots = this.resourceSlots;
+        if (slots == null) {
+            slots = ResourceSlots.of(requiredMap, readResourceKeys);
+            this.resourceSlots = slots;
+        }
+        return slots;
+    }
+
+    @Override
+    public Map<String, Object> getClaimedParams() { return this.claimedParams; }
+
+    @Override
+    public void setClaimedParams(Map<String, Object> claimedParams) { this.claimedParams = claimedParams; }
+
     @Override
     public Collection<ITaskRunner> getDependents() {
         return this.dependents;
@@ -131,14 +202,67 @@ public class WorkUnitShell implements ITaskRunner {
     @Override
     public void setDependents(Collection<ITaskRunner> dependents) { this.dependents = dependents; }
 
+    @Override
+    public int getPendingDependents() {
+        return this.pendingDependents.get();
+    }
+
+    @Override
+    public void setPendingDependents(int count) {
+        this.pendingDependents.set(count);
+    }
+
+    @Override
+    public int decrementPendingDependents() {
+        return this.pendingDependents.decrementAndGet();
+    }
+
+    @Override
+    public long getCriticalPathLength() {
+        return this.criticalPathLength;
+    }
+
+    @Override
+    public void setCriticalPathLength(long criticalPathLength) {
+        this.criticalPathLength = criticalPathLength;
+    }
+
+    @Override
+    public FairShare getFairShare() {
+        return fairShare;
+    }
+
+    @Override
+    public void setFairShare(FairShare fairShare) {
+        this.fairShare = fairShare;
+    }
+
+    @Override
+    public CompletableFuture<ITaskRunner> getCompletion() {
+        return this.completion;
+    }
+
     @Override
     public ITaskRunner getParent() {
-        return this.parent;
+        return this.parents.isEmpty() ? null : this.parents.get(0);
     }
 
     @Override
     public void setParent(ITaskRunner parent) {
-        this.parent = parent;
+        this.parents.clear();
+        addParent(parent);
+    }
+
+    @Override
+    public Collection<ITaskRunner> getParents() {
+        return this.parents;
+    }
+
+    @Override
+    public void addParent(ITaskRunner parent) {
+        if (parent != null && !this.parents.contains(parent)) {
+            this.parents.add(parent);
+        }
     }
 
     @Override
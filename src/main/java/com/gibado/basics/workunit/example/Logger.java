@@ -3,6 +3,11 @@ package com.gibado.basics.workunit.example;
 import com.gibado.basics.workunit.ITaskRunner;
 import com.gibado.basics.workunit.WorkUnit;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
 /**
  * Logs information to the console and tracks this for later
  */
@@ -35,20 +40,8 @@ public class Logger {
      * @param workUnit {@link ITaskRunner} root to start with
      */
     public void logWorkUnitTree(ITaskRunner workUnit) {
-        logWorkUnitTree("", workUnit);
-    }
-
-    /**
-     * Prints out data for a {@link ITaskRunner} tree
-     * @param prepend String to note how many levels deep into the tree
-     * @param workUnit {@link ITaskRunner} root to start with
-     */
-    private void logWorkUnitTree(String prepend, ITaskRunner workUnit) {
-        log(prepend + workUnit.toString());
-        if (workUnit.getDependents() != null) {
-            for (ITaskRunner dependent : workUnit.getDependents()) {
-                logWorkUnitTree(prepend + "-", dependent);
-            }
+        for (String line : treeLines(workUnit)) {
+            log(line);
         }
     }
 
@@ -57,20 +50,36 @@ public class Logger {
      * @param workUnit {@link WorkUnit} root to start with
      */
     public static void logWorkUnitTreeToConsole(ITaskRunner workUnit) {
-        logWorkUnitTreeToConsole("", workUnit);
+        for (String line : treeLines(workUnit)) {
+            logToConsole(line);
+        }
     }
 
     /**
-     * Prints out data for a {@link WorkUnit} tree to the console
-     * @param prepend String to note how many levels deep into the tree
-     * @param workUnit {@link WorkUnit} root to start with
+     * Creates one line per {@link ITaskRunner} in the tree, each prefixed with a "-" for every level deep it is.  The
+     * tree is walked with its own stack so deep trees don't overflow the thread's stack.
+     * @param workUnit {@link ITaskRunner} root to start with
+     * @return Returns the lines of the tree, root first
      */
-    private static void logWorkUnitTreeToConsole(String prepend, ITaskRunner workUnit) {
-        logToConsole(prepend + workUnit.toString());
-        if (workUnit.getDependents() != null) {
-            for (ITaskRunner dependent : workUnit.getDependents()) {
-                logWorkUnitTreeToConsole(prepend + "-", dependent);
+    private static List<String> treeLines(ITaskRunner workUnit) {
+        List<String> lines = new ArrayList<>();
+        Deque<ITaskRunner> runners = new ArrayDeque<>();
+        Deque<String> prepends = new ArrayDeque<>();
+        runners.push(workUnit);
+        prepends.push("");
+        while (!runners.isEmpty()) {
+            ITaskRunner runner = runners.pop();
+            String prepend = prepends.pop();
+            lines.add(prepend + runner.toString());
+            if (runner.getDependents() != null) {
+                // Pushed in reverse so dependents come out in order
+                List<ITaskRunner> dependents = new ArrayList<>(runner.getDependents());
+                for (int i = dependents.size() - 1; i >= 0; i--) {
+                    runners.push(dependents.get(i));
+                    prepends.push(prepend + "-");
+                }
             }
         }
+        return lines;
     }
 }
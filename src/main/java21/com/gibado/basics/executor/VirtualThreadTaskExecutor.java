@@ -0,0 +1,42 @@
+package com.gibado.basics.executor;
+
+import com.gibado.basics.workunit.ITaskRunner;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An {@link ITaskExecutor} that runs every {@link ITaskRunner} on its own virtual thread.  A task blocked on I/O, or a
+ * runner parked waiting for a released resource, gives up its carrier thread so thousands of them only need a
+ * handful of platform threads.
+ */
+public class VirtualThreadTaskExecutor implements ITaskExecutor {
+    private final ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Returns true if the current runtime supports virtual threads
+     * @return Returns true if the current runtime supports virtual threads
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        pool.execute(task);
+    }
+
+    /**
+     * Returns the number of carrier threads virtual threads are mounted on
+     * @return Returns the number of carrier threads virtual threads are mounted on
+     */
+    @Override
+    public int getParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
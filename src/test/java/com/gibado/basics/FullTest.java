@@ -1,15 +1,46 @@
 package com.gibado.basics;
 
+import com.gibado.basics.executor.ITaskExecutor;
+import com.gibado.basics.executor.ThreadPoolTaskExecutor;
+import com.gibado.basics.executor.VirtualThreadTaskExecutor;
+import com.gibado.basics.metrics.ContentionProfiler;
+import com.gibado.basics.metrics.LatencyMetrics;
+import com.gibado.basics.metrics.ProfiledSharable;
+import com.gibado.basics.metrics.ResourceContention;
+import com.gibado.basics.metrics.TaskLatency;
+import com.gibado.basics.metrics.TraceRecorder;
+import com.gibado.basics.plan.ExecutionPlan;
+import com.gibado.basics.scheduling.AdmissionLimit;
+import com.gibado.basics.scheduling.FairShare;
+import com.gibado.basics.scheduling.FairShareScheduler;
+import com.gibado.basics.scheduling.TaskCostHistory;
+import com.gibado.basics.sharable.ISharable;
+import com.gibado.basics.sharable.ReadOnlySharable;
+import com.gibado.basics.sharable.ReadWriteSharable;
+import com.gibado.basics.sharable.ReleaseWaiter;
 import com.gibado.basics.sharable.Sharable;
 import com.gibado.basics.sharable.SharableMap;
 import com.gibado.basics.workunit.ITask;
 import com.gibado.basics.workunit.ITaskRunner;
+import com.gibado.basics.workunit.ParallelForTask;
+import com.gibado.basics.workunit.ParamMap;
+import com.gibado.basics.workunit.ResourceSlots;
+import com.gibado.basics.workunit.State;
+import com.gibado.basics.workunit.TaskShell;
 import com.gibado.basics.workunit.WorkUnit;
 import com.gibado.basics.workunit.example.*;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertTrue;
 
@@ -150,6 +181,1433 @@ public class FullTest {
         assertTrue(consoleOutput.contains("-Go to the Bathroom - ERROR in "));
     }
 
+    @Test
+    public void queueWorkUnitWaitsForRootTest() {
+        Logger logger = new Logger();
+        Sharable<Logger> logShare = new Sharable<>(logger);
+        Sharable<StringBuilder> bodyShare = new Sharable<>(new StringBuilder("My body:"));
+        List<ITaskRunner> dependents = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            StringAppendWorkUnit step = new StringAppendWorkUnit("Step " + i, "step " + i, bodyShare, logShare);
+            // Each step waits on a chain of its own
+            step.setDependents(new StringAppendWorkUnit("Prep " + i, "prep " + i, bodyShare, logShare));
+            dependents.add(step);
+        }
+
+        PrintResultWorkUnit results = new PrintResultWorkUnit(logShare, bodyShare);
+        results.setDependents(dependents);
+
+        processPlant.queueWorkUnit(results);
+
+        assertTrue(State.DONE.equals(results.getState()));
+        for (ITaskRunner dependent : dependents) {
+            assertTrue(State.DONE.equals(dependent.getState()));
+        }
+    }
+
+    @Test
+    public void waitForReleasedResourceTest() {
+        Logger logger = new Logger();
+        Sharable<Logger> logShare = new Sharable<>(logger);
+        Sharable<StringBuilder> bodyShare = new Sharable<>(new StringBuilder("My body:"));
+        List<ITaskRunner> dependents = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            WorkUnit nap = new WorkUnit() {
+                @Override
+                public void performTask(Map<String, ?> params) {
+                    try {
+                        // Hold on to the body long enough for the others to start waiting
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    ((StringBuilder) params.get("body")).append(" (rested)");
+                }
+            };
+            nap.setName("Nap " + i);
+            nap.addResource("body", bodyShare);
+            nap.setTimeout(5000);
+            dependents.add(nap);
+        }
+
+        PrintResultWorkUnit results = new PrintResultWorkUnit(logShare, bodyShare);
+        results.setDependents(dependents);
+
+        processPlant.queueWorkUnit(results);
+
+        assertTrue(State.DONE.equals(results.getState()));
+        assertTrue(bodyShare.toString().contains("(rested) (rested) (rested) (rested)"));
+    }
+
+    @Test
+    public void overlappingResourcesTest() {
+        Logger logger = new Logger();
+        Sharable<Logger> logShare = new Sharable<>(logger);
+        Sharable<StringBuilder> bodyShare = new Sharable<>(new StringBuilder("My body:"));
+        Sharable<StringBuilder> mindShare = new Sharable<>(new StringBuilder("My mind:"));
+        List<String> claims = Collections.synchronizedList(new ArrayList<>());
+        ISharable<StringBuilder> body = recordingSharable("body", bodyShare, claims);
+        ISharable<StringBuilder> mind = recordingSharable("mind", mindShare, claims);
+        List<ITaskRunner> dependents = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            WorkUnit stretch = new WorkUnit() {
+                @Override
+                public void performTask(Map<String, ?> params) {
+                    ((StringBuilder) params.get("first")).append(".");
+                    ((StringBuilder) params.get("second")).append(".");
+                }
+            };
+            // The keys are the same for every unit, so half of them list body first and half list mind first
+            if (i % 2 == 0) {
+                stretch.addResource("first", body);
+                stretch.addResource("second", mind);
+            } else {
+                stretch.addResource("first", mind);
+                stretch.addResource("second", body);
+            }
+            stretch.setTimeout(5000);
+            dependents.add(stretch);
+        }
+
+        PrintResultWorkUnit results = new PrintResultWorkUnit(logShare, bodyShare, mindShare);
+        results.setDependents(dependents);
+
+        processPlant.queueWorkUnit(results);
+
+        assertTrue(State.DONE.equals(results.getState()));
+        assertTrue(bodyShare.toString().endsWith("My body:" + String.join("", Collections.nCopies(40, "."))));
+        assertTrue(mindShare.toString().endsWith("My mind:" + String.join("", Collections.nCopies(40, "."))));
+        // Claimed in claim order, not key order, so mind is only ever claimed while holding body
+        for (int i = 0; i < claims.size(); i++) {
+            assertTrue(!claims.get(i).startsWith("mind") || i > 0 && claims.get(i - 1).equals("body claimed"));
+        }
+    }
+
+    /**
+     * Wraps a {@link Sharable} so every claim that gets through is written down
+     */
+    private <T> ISharable<T> recordingSharable(String name, Sharable<T> sharable, List<String> claims) {
+        return new ISharable<T>() {
+            @Override
+            public void assignValue(T value) {
+                sharable.assignValue(value);
+            }
+
+            @Override
+            public boolean isLocked() {
+                return sharable.isLocked();
+            }
+
+            @Override
+            public boolean isReadLocked() {
+                return sharable.isReadLocked();
+            }
+
+            @Override
+            public T claim(ITaskRunner runner) {
+                T value = sharable.claim(runner);
+                if (value != null) {
+                    claims.add(name + " claimed");
+                }
+                return value;
+            }
+
+            @Override
+            public T claimRead(ITaskRunner runner) {
+                return claim(runner);
+            }
+
+            @Override
+            public void release(ITaskRunner runner) {
+                sharable.release(runner);
+            }
+
+            @Override
+            public void awaitRelease(ReleaseWaiter waiter) {
+                sharable.awaitRelease(waiter);
+            }
+
+            @Override
+            public long getClaimOrder() {
+                return sharable.getClaimOrder();
+            }
+        };
+    }
+
+    @Test
+    public void minimalSharableTest() {
+        // An ISharable written against the original four methods still works with everything added since
+        StringBuilder notes = new StringBuilder("Notes:");
+        AtomicInteger holders = new AtomicInteger();
+        ISharable<StringBuilder> minimal = new ISharable<StringBuilder>() {
+            private final AtomicReference<ITaskRunner> owner = new AtomicReference<>();
+
+            @Override
+            public void assignValue(StringBuilder value) { }
+
+            @Override
+            public boolean isLocked() {
+                return owner.get() != null;
+            }
+
+            @Override
+            public StringBuilder claim(ITaskRunner runner) {
+                return owner.compareAndSet(null, runner) ? notes : null;
+            }
+
+            @Override
+            public void release(ITaskRunner runner) {
+                owner.compareAndSet(runner, null);
+            }
+        };
+        List<ITaskRunner> writers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            WorkUnit writer = new WorkUnit() {
+                @Override
+                public void performTask(Map<String, ?> params) {
+                    assertTrue(holders.incrementAndGet() == 1);
+                    ((StringBuilder) params.get("notes")).append(".");
+                    holders.decrementAndGet();
+                }
+            };
+            writer.addResource("notes", minimal);
+            writer.addReadResource("also", new Sharable<>("read"));
+            writers.add(writer);
+        }
+        WorkUnit done = namedUnit("Done", new ArrayList<>());
+        done.setDependents(writers);
+        processPlant.queueWorkUnit(done);
+
+        assertTrue(State.DONE.equals(done.getState()));
+        assertTrue("Notes:..........".equals(notes.toString()));
+        assertTrue(minimal.getClaimOrder() == minimal.getClaimOrder());
+    }
+
+    @Test
+    public void sharedReadTest() {
+        SharableMap sharableMap = new SharableMap();
+        String configKey = "config";
+        sharableMap.addNewReadWriteResource(configKey, new StringBuilder("config"));
+        processPlant.addSharableMap(sharableMap);
+
+        // Every reader waits for all of the others so this only finishes if they hold the config at the same time
+        CountDownLatch allReading = new CountDownLatch(4);
+        List<Boolean> sharedReads = Collections.synchronizedList(new ArrayList<>());
+        List<ITask> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(new TaskShell() {
+                @Override
+                public void performTask(Map<String, ?> params) {
+                    allReading.countDown();
+                    try {
+                        sharedReads.add(allReading.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                @Override
+                public Collection<String> getResourceKeys() {
+                    return Collections.singletonList(configKey);
+                }
+
+                @Override
+                public Collection<String> getReadResourceKeys() {
+                    return Collections.singletonList(configKey);
+                }
+
+                @Override
+                public Collection<ITask> getDependents() {
+                    return Collections.EMPTY_LIST;
+                }
+            });
+        }
+        ITask writer = new TaskShell() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                ((StringBuilder) params.get(configKey)).append(" (read)");
+            }
+
+            @Override
+            public Collection<String> getResourceKeys() {
+                return Collections.singletonList(configKey);
+            }
+
+            @Override
+            public Collection<ITask> getDependents() {
+                return readers;
+            }
+        };
+
+        ITaskRunner writerRunner = processPlant.queueTask(writer);
+
+        assertTrue(State.DONE.equals(writerRunner.getState()));
+        assertTrue(sharedReads.size() == 4 && !sharedReads.contains(false));
+        assertTrue(sharableMap.getResourceMap().get(configKey).toString().contains("config (read)"));
+    }
+
+    @Test
+    public void writerNotStarvedByReadersTest() throws InterruptedException {
+        ProcessPlant readingPlant = new ProcessPlant(4);
+        ReadWriteSharable<StringBuilder> config = new ReadWriteSharable<>(new StringBuilder("config"));
+        List<String> finished = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<ITaskRunner>> futures = new ArrayList<>();
+        WorkUnit writer = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                ((StringBuilder) params.get("config")).append(" (written)");
+                finished.add("Writer");
+            }
+        };
+        writer.addResource("config", config);
+        // Far shorter than the reader stream, which never lets go of the config on its own
+        writer.setTimeout(150);
+
+        // A new reader every millisecond, each holding the config for a few, so there is always one reading
+        for (int i = 0; i < 300; i++) {
+            WorkUnit reader = new WorkUnit() {
+                @Override
+                public void performTask(Map<String, ?> params) {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finished.add("Reader");
+                }
+            };
+            reader.addReadResource("config", config);
+            futures.add(readingPlant.submitWorkUnit(reader));
+            if (i == 20) {
+                futures.add(readingPlant.submitWorkUnit(writer));
+            }
+            Thread.sleep(1);
+        }
+        for (CompletableFuture<ITaskRunner> future : futures) {
+            future.handle((runner, error) -> runner).join();
+        }
+        readingPlant.shutdown();
+
+        assertTrue(State.DONE.equals(writer.getState()));
+        assertTrue(finished.indexOf("Writer") < finished.size() - 100 && finished.size() == 301);
+        assertTrue(config.toString().contains("config (written)") && !config.isLocked());
+    }
+
+    @Test
+    public void independentPlantsTest() throws InterruptedException {
+        List<PrintResultWorkUnit> roots = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> callers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            callers.add(new Thread(() -> {
+                Logger logger = new Logger();
+                Sharable<Logger> logShare = new Sharable<>(logger);
+                Sharable<StringBuilder> bodyShare = new Sharable<>(new StringBuilder("My body:"));
+                List<ITaskRunner> dependents = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    dependents.add(new StringAppendWorkUnit("Step " + i, "step " + i, bodyShare, logShare));
+                }
+                PrintResultWorkUnit results = new PrintResultWorkUnit(logShare, bodyShare);
+                results.setDependents(dependents);
+                // Every caller has a plant of its own
+                ProcessPlant ownPlant = new ProcessPlant(2);
+                try {
+                    ownPlant.queueWorkUnit(results);
+                } finally {
+                    ownPlant.shutdown();
+                }
+                roots.add(results);
+            }));
+        }
+        for (Thread caller : callers) {
+            caller.start();
+        }
+        for (Thread caller : callers) {
+            caller.join(10000);
+        }
+
+        assertTrue(roots.size() == 4);
+        for (PrintResultWorkUnit root : roots) {
+            assertTrue(State.DONE.equals(root.getState()));
+        }
+    }
+
+    @Test
+    public void sharedDependentRunsOnceTest() {
+        AtomicInteger parseCount = new AtomicInteger();
+        List<String> consumed = Collections.synchronizedList(new ArrayList<>());
+        ITask parseFile = new TaskShell() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                parseCount.incrementAndGet();
+            }
+
+            @Override
+            public Collection<ITask> getDependents() {
+                return Collections.EMPTY_LIST;
+            }
+        };
+        List<ITask> consumers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String name = "Consumer " + i;
+            consumers.add(new TaskShell() {
+                @Override
+                public void performTask(Map<String, ?> params) {
+                    consumed.add(name);
+                }
+
+                @Override
+                public Collection<ITask> getDependents() {
+                    return Collections.singletonList(parseFile);
+                }
+            });
+        }
+        ITask report = new TaskShell() {
+            @Override
+            public Collection<ITask> getDependents() {
+                return consumers;
+            }
+
+            @Override
+            public void performTask(Map<String, ?> params) { }
+        };
+
+        ITaskRunner reportRunner = processPlant.queueTask(report);
+
+        assertTrue(State.DONE.equals(reportRunner.getState()));
+        assertTrue(parseCount.get() == 1);
+        assertTrue(consumed.size() == 3);
+        ITaskRunner parseRunner = reportRunner.getDependents().iterator().next().getDependents().iterator().next();
+        assertTrue(parseRunner.getParents().size() == 3);
+    }
+
+    @Test
+    public void executionPlanRunsManyTimesTest() {
+        AtomicInteger parseCount = new AtomicInteger();
+        ITask parseFile = new TaskShell() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                parseCount.incrementAndGet();
+            }
+
+            @Override
+            public Collection<ITask> getDependents() {
+                return Collections.EMPTY_LIST;
+            }
+        };
+        List<ITask> consumers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            consumers.add(new TaskShell() {
+                @Override
+                public void performTask(Map<String, ?> params) {
+                    ((AtomicInteger) params.get("consumed")).incrementAndGet();
+                }
+
+                @Override
+                public Collection<ITask> getDependents() {
+                    return Collections.singletonList(parseFile);
+                }
+
+                @Override
+                public Collection<String> getResourceKeys() {
+                    return Collections.singletonList("consumed");
+                }
+            });
+        }
+        ITask report = new TaskShell() {
+            @Override
+            public Collection<ITask> getDependents() {
+                return consumers;
+            }
+
+            @Override
+            public void performTask(Map<String, ?> params) { }
+        };
+        AtomicInteger consumed = new AtomicInteger();
+        processPlant.addResource("consumed", new Sharable<>(consumed));
+
+        ExecutionPlan plan = processPlant.compile(report);
+        List<CompletableFuture<ITaskRunner>> runs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            runs.add(processPlant.submitPlan(plan));
+        }
+        for (CompletableFuture<ITaskRunner> run : runs) {
+            assertTrue(State.DONE.equals(run.join().getState()));
+        }
+
+        assertTrue(plan.size() == 5);
+        assertTrue(plan.getParents(plan.getDependents(1)[0]).length == 3);
+        assertTrue(parseCount.get() == 5);
+        assertTrue(consumed.get() == 15);
+    }
+
+    @Test
+    public void slotParamsTest() {
+        Sharable<StringBuilder> bodyShare = new Sharable<>(new StringBuilder("My body:"));
+        Sharable<Logger> logShare = new Sharable<>(new Logger());
+        List<Boolean> checks = new ArrayList<>();
+        WorkUnit wash = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                ParamMap slots = (ParamMap) params;
+                int body = slots.slotOf("body");
+                checks.add(slots.size() == 2);
+                checks.add(slots.get(body) == params.get(new String("body")));
+                checks.add(slots.get("log") instanceof Logger);
+                ((StringBuilder) slots.get(body)).append(" (washed)");
+            }
+        };
+        wash.addResource("body", bodyShare);
+        wash.addResource("log", logShare);
+
+        processPlant.queueWorkUnit(wash);
+
+        assertTrue(State.DONE.equals(wash.getState()));
+        assertTrue(checks.size() == 3 && !checks.contains(false));
+        assertTrue(bodyShare.toString().contains("(washed)"));
+        assertTrue(!bodyShare.isLocked() && !logShare.isLocked());
+
+        // Tasks without resources share one empty map instead of each getting their own
+        ParamMap none = ResourceSlots.EMPTY.newParamMap();
+        assertTrue(none.isEmpty() && none == ResourceSlots.EMPTY.newParamMap());
+        assertTrue(wash.getResourceSlots().newParamMap() != wash.getResourceSlots().newParamMap());
+    }
+
+    @Test
+    public void failedClaimReleasesEverythingTest() {
+        Sharable<StringBuilder> bodyShare = new Sharable<>(new StringBuilder("My body:"));
+        // Claiming this goes through but hands back null, which counts as not claimed
+        Sharable<Logger> emptyShare = new Sharable<>(null);
+        WorkUnit wash = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+            }
+        };
+        wash.addResource("body", bodyShare);
+        wash.addResource("log", emptyShare);
+
+        ParamMap params = wash.getResourceSlots().newParamMap();
+        assertTrue(!wash.getResourceSlots().claimAll(wash, params));
+        assertTrue(!bodyShare.isLocked() && !emptyShare.isLocked());
+    }
+
+    @Test
+    public void submitTaskReturnsFutureTest() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        ITask slow = new TaskShell() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public Collection<ITask> getDependents() {
+                return Collections.EMPTY_LIST;
+            }
+        };
+        ITask broken = new TaskShell() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                throw new IllegalStateException("broken");
+            }
+
+            @Override
+            public Collection<ITask> getDependents() {
+                return Collections.singletonList(slow);
+            }
+        };
+
+        CompletableFuture<ITaskRunner> future = processPlant.submitTask(broken);
+        // Nothing can finish until the gate opens so the caller wasn't held up
+        assertTrue(!future.isDone());
+        CompletableFuture<String> message = future.handle((runner, e) -> e.getMessage());
+        gate.countDown();
+
+        assertTrue("broken".equals(message.get(5, TimeUnit.SECONDS)));
+        assertTrue(future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void threadPoolExecutorTest() {
+        IProcessPlant threadPoolPlant = new ProcessPlant(new ThreadPoolTaskExecutor(2));
+        Sharable<StringBuilder> bodyShare = new Sharable<>(new StringBuilder("My body:"));
+        List<ITaskRunner> dependents = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            WorkUnit stretch = new WorkUnit() {
+                @Override
+                public void performTask(Map<String, ?> params) {
+                    ((StringBuilder) params.get("body")).append(" (stretched)");
+                }
+            };
+            stretch.setName("Stretch " + i);
+            stretch.addResource("body", bodyShare);
+            dependents.add(stretch);
+        }
+        PrintResultWorkUnit results = new PrintResultWorkUnit(new Sharable<>(new Logger()), bodyShare);
+        results.setDependents(dependents);
+
+        threadPoolPlant.queueWorkUnit(results);
+        threadPoolPlant.shutdown();
+
+        assertTrue(threadPoolPlant.getExecutor().getParallelism() == 2);
+        assertTrue(State.DONE.equals(results.getState()));
+        assertTrue(bodyShare.toString().contains("(stretched) (stretched) (stretched) (stretched)"));
+    }
+
+    @Test
+    public void virtualThreadExecutorTest() {
+        // Set when this runs against the multi-release jar, where the Java 21 version has to be the one loaded
+        if (Boolean.getBoolean("autothreading.requireVirtualThreads")) {
+            assertTrue(VirtualThreadTaskExecutor.isSupported());
+        }
+        if (!VirtualThreadTaskExecutor.isSupported()) {
+            try {
+                new VirtualThreadTaskExecutor();
+                assertTrue(false);
+            } catch (UnsupportedOperationException e) {
+                // Expected before Java 21
+            }
+            return;
+        }
+        IProcessPlant virtualPlant = new ProcessPlant(new VirtualThreadTaskExecutor());
+        List<ITaskRunner> dependents = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            WorkUnit wait = new WorkUnit() {
+                @Override
+                public void performTask(Map<String, ?> params) {
+                    try {
+                        // Stand in for blocking I/O
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            dependents.add(wait);
+        }
+        WorkUnit done = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) { }
+        };
+        done.setDependents(dependents);
+
+        virtualPlant.queueWorkUnit(done);
+        virtualPlant.shutdown();
+
+        assertTrue(State.DONE.equals(done.getState()));
+    }
+
+    @Test
+    public void costHistoryTest() {
+        TaskCostHistory history = new TaskCostHistory();
+        // Small differences still move the average, up and down
+        history.record("Blink", 0);
+        for (int i = 0; i < 20; i++) {
+            history.record("Blink", 3);
+        }
+        assertTrue(history.getAverage("Blink") == 2 && history.getAverageNanos("Blink") > 2_900_000);
+        for (int i = 0; i < 40; i++) {
+            history.record("Blink", 1);
+        }
+        assertTrue(history.getAverage("Blink") == 1 && history.getAverageNanos("Blink") < 1_100_000);
+        // Tasks under a millisecond are told apart
+        history.recordNanos("Glance", 200_000);
+        history.recordNanos("Stare", 800_000);
+        assertTrue(history.getCost("Stare") > history.getCost("Glance"));
+        assertTrue(history.getCost("Unseen") == TaskCostHistory.DEFAULT_COST);
+    }
+
+    @Test
+    public void criticalPathFirstTest() {
+        ProcessPlant singlePlant = new ProcessPlant(1);
+        singlePlant.setCostHistory(new TaskCostHistory());
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        WorkUnit day = runErrandsOnOneThread(singlePlant, started);
+
+        assertTrue(State.DONE.equals(day.getState()));
+        assertTrue("Commute 3".equals(started.get(0)));
+        assertTrue(day.getCriticalPathLength() == TaskCostHistory.DEFAULT_COST);
+    }
+
+    /**
+     * Runs a day of errands where one of them is a chain of three commutes, with everything ready queued before the
+     * plant's only thread is free to start any of it
+     * @param singlePlant Plant with a single thread, shut down once the day is done
+     * @param started Names of the tasks in the order they started
+     * @return Returns the root of the day
+     */
+    private WorkUnit runErrandsOnOneThread(ProcessPlant singlePlant, List<String> started) {
+        List<ITaskRunner> dependents = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            dependents.add(namedUnit("Errand " + i, started));
+        }
+        // Commute 3 has to happen before Commute 2 which has to happen before Commute 1
+        WorkUnit commute = namedUnit("Commute 1", started);
+        commute.setDependents(namedUnit("Commute 2", started));
+        commute.getDependents().iterator().next().setDependents(namedUnit("Commute 3", started));
+        dependents.add(commute);
+        WorkUnit day = namedUnit("Day", started);
+        day.setDependents(dependents);
+
+        // Keep the only thread busy until everything ready has been queued
+        CountDownLatch gate = new CountDownLatch(1);
+        singlePlant.getExecutor().execute(() -> {
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CompletableFuture<ITaskRunner> future = singlePlant.submitWorkUnit(day);
+        gate.countDown();
+        future.join();
+        singlePlant.shutdown();
+        return day;
+    }
+
+    private WorkUnit namedUnit(String name, List<String> started) {
+        WorkUnit unit = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                started.add(getName());
+            }
+        };
+        unit.setName(name);
+        return unit;
+    }
+
+    @Test
+    public void waitingForResourceFreesThreadTest() throws InterruptedException {
+        IProcessPlant singlePlant = new ProcessPlant(new ThreadPoolTaskExecutor(1));
+        Sharable<StringBuilder> carShare = new Sharable<>(new StringBuilder("Car:"));
+        WorkUnit holder = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) { }
+        };
+        // Someone else has the car
+        carShare.claim(holder);
+
+        WorkUnit drive = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                ((StringBuilder) params.get("car")).append(" (driven)");
+            }
+        };
+        drive.addResource("car", carShare);
+        drive.setTimeout(5000);
+        CountDownLatch walked = new CountDownLatch(1);
+        WorkUnit walk = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                walked.countDown();
+            }
+        };
+        WorkUnit arrive = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) { }
+        };
+        arrive.setDependents(drive, walk);
+
+        CompletableFuture<ITaskRunner> future = singlePlant.submitWorkUnit(arrive);
+        // Waiting for the car doesn't hold the only thread
+        assertTrue(walked.await(2, TimeUnit.SECONDS));
+        assertTrue(!future.isDone());
+        carShare.release(holder);
+        future.join();
+        singlePlant.shutdown();
+
+        assertTrue(State.DONE.equals(arrive.getState()));
+        assertTrue(carShare.toString().contains("(driven)"));
+    }
+
+    @Test
+    public void tinyTasksBatchedTest() {
+        AtomicInteger executed = new AtomicInteger();
+        ITaskExecutor threadPool = new ThreadPoolTaskExecutor(2);
+        ProcessPlant batchingPlant = new ProcessPlant(new ITaskExecutor() {
+            @Override
+            public void execute(Runnable task) {
+                executed.incrementAndGet();
+                threadPool.execute(task);
+            }
+
+            @Override
+            public int getParallelism() {
+                return threadPool.getParallelism();
+            }
+
+            @Override
+            public void shutdown() {
+                threadPool.shutdown();
+            }
+        });
+        batchingPlant.setBatching(5, TimeUnit.MILLISECONDS, 64);
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+        // The first run measures how long a blink takes
+        WorkUnit firstDay = namedUnit("Day", started);
+        List<ITaskRunner> firstBlinks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            firstBlinks.add(namedUnit("Blink", started));
+        }
+        firstDay.setDependents(firstBlinks);
+        batchingPlant.queueWorkUnit(firstDay);
+
+        executed.set(0);
+        WorkUnit secondDay = namedUnit("Day", started);
+        List<ITaskRunner> secondBlinks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            secondBlinks.add(namedUnit("Blink", started));
+        }
+        secondDay.setDependents(secondBlinks);
+        batchingPlant.queueWorkUnit(secondDay);
+        batchingPlant.shutdown();
+
+        // Blinks are batched, so far fewer executor tasks than the 101 it would take to run each one alone
+        assertTrue(executed.get() < 100);
+        assertTrue(State.DONE.equals(secondDay.getState()));
+        for (ITaskRunner blink : secondBlinks) {
+            assertTrue(State.DONE.equals(blink.getState()) && blink.getTaskTime() >= 0);
+        }
+    }
+
+    @Test
+    public void latencyMetricsTest() throws InterruptedException {
+        ProcessPlant metricsPlant = new ProcessPlant(2);
+        LatencyMetrics metrics = new LatencyMetrics();
+        metricsPlant.setLatencyMetrics(metrics);
+        Sharable<StringBuilder> carShare = new Sharable<>(new StringBuilder("Car:"));
+        WorkUnit holder = namedUnit("Holder", new ArrayList<>());
+        // Someone else has the car for a while
+        carShare.claim(holder);
+
+        WorkUnit drive = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        drive.setName("Drive");
+        drive.addResource("car", carShare);
+        CompletableFuture<ITaskRunner> future = metricsPlant.submitWorkUnit(drive);
+        Thread.sleep(50);
+        carShare.release(holder);
+        future.join();
+        metricsPlant.shutdown();
+
+        TaskLatency latency = metrics.get("Drive");
+        assertTrue(latency != null && latency.getExecute().getCount() == 1);
+        assertTrue(latency.getResourceWait().getP50() >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertTrue(latency.getExecute().getP99() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(latency.getQueueWait().getCount() == 1);
+        // Waiting for the car isn't counted as driving
+        assertTrue(drive.getTaskTime() < 40);
+    }
+
+    @Test
+    public void contentionProfilerTest() {
+        ContentionProfiler profiler = new ContentionProfiler();
+        SharableMap sharableMap = new SharableMap();
+        sharableMap.addNewResource("radio", new StringBuilder("Radio:"));
+        sharableMap.profile(profiler);
+        sharableMap.addNewResource("car", new StringBuilder("Car:"));
+        Map<String, ISharable<?>> resources = sharableMap.getResourceMap();
+
+        List<ITaskRunner> errands = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            WorkUnit drive = new WorkUnit() {
+                @Override
+                public void performTask(Map<String, ?> params) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            drive.setName("Drive");
+            drive.addResource("car", resources.get("car"));
+            errands.add(drive);
+        }
+        WorkUnit listen = namedUnit("Listen", new ArrayList<>());
+        listen.addResource("radio", resources.get("radio"));
+        errands.add(listen);
+        WorkUnit day = namedUnit("Day", new ArrayList<>());
+        day.setDependents(errands);
+        processPlant.queueWorkUnit(day);
+
+        assertTrue(State.DONE.equals(day.getState()));
+        List<ResourceContention> hot = profiler.getHotResources();
+        assertTrue(hot.size() == 2 && "car".equals(hot.get(0).getName()));
+        ResourceContention car = profiler.get("car");
+        assertTrue(car.getFailedClaims() > 0 && car.getClaimAttempts() >= 3 + car.getFailedClaims());
+        assertTrue(car.getWaitTime() > 0 && "Drive".equals(car.getTopWaiters(1).get(0)));
+        assertTrue(car.getMaxHoldTime() >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue(profiler.get("radio").getFailedClaims() == 0);
+        assertTrue(profiler.report().startsWith("1. car"));
+
+        // A runner that gives up waiting isn't remembered as waiting
+        ProfiledSharable<?> profiledCar = (ProfiledSharable<?>) resources.get("car");
+        WorkUnit holder = namedUnit("Holder", new ArrayList<>());
+        profiledCar.claim(holder);
+        WorkUnit impatient = namedUnit("Impatient", new ArrayList<>());
+        impatient.addResource("car", profiledCar);
+        impatient.setTimeout(5);
+        processPlant.queueWorkUnit(impatient);
+        profiledCar.release(holder);
+
+        assertTrue(State.ERROR.equals(impatient.getState()));
+        long deadline = System.currentTimeMillis() + 1000;
+        while (profiledCar.getWaiting() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertTrue(profiledCar.getWaiting() == 0);
+
+        // Reading a resource that never locks doesn't leave its readers behind
+        sharableMap.addResource("map", new ReadOnlySharable<>("Road map"));
+        ProfiledSharable<?> roadMap = (ProfiledSharable<?>) sharableMap.getResourceMap().get("map");
+        for (int i = 0; i < 20; i++) {
+            WorkUnit lookUp = namedUnit("Look up", new ArrayList<>());
+            lookUp.addReadResource("map", roadMap);
+            processPlant.queueWorkUnit(lookUp);
+            assertTrue(State.DONE.equals(lookUp.getState()));
+        }
+        assertTrue(roadMap.getHolding() == 0 && profiledCar.getHolding() == 0);
+    }
+
+    @Test
+    public void traceRecorderTest() throws IOException {
+        ProcessPlant tracingPlant = new ProcessPlant(2);
+        StringWriter trace = new StringWriter();
+        TraceRecorder recorder = new TraceRecorder(trace, 16);
+        tracingPlant.setTraceRecorder(recorder);
+        WorkUnit day = namedUnit("Day", new ArrayList<>());
+        day.setDependents(namedUnit("Wake \"up\"", new ArrayList<>()), namedUnit("Eat", new ArrayList<>()));
+        tracingPlant.queueWorkUnit(day);
+        tracingPlant.shutdown();
+        recorder.close();
+
+        String json = trace.toString().trim();
+        assertTrue(json.startsWith("[") && json.endsWith("]"));
+        assertTrue(json.contains("\"name\":\"Day\",\"ph\":\"X\""));
+        assertTrue(json.contains("\"name\":\"Wake \\\"up\\\"\",\"ph\":\"X\""));
+        assertTrue(json.split("\"ph\":\"X\"", -1).length - 1 == 3);
+        assertTrue(json.contains("\"ph\":\"M\"") && json.contains("\"state\":\"DONE\""));
+        assertTrue(recorder.getDropped() == 0);
+
+        // A trace with nothing in it is still an array that can be loaded
+        StringWriter emptyTrace = new StringWriter();
+        new TraceRecorder(emptyTrace).close();
+        assertTrue("[]".equals(emptyTrace.toString().replaceAll("\\s", "")));
+    }
+
+    @Test
+    public void deepChainTest() {
+        // Far deeper than a recursive walk could go on a default stack
+        int depth = 100000;
+        WorkUnit first = namedUnit("Step", new ArrayList<>());
+        WorkUnit last = first;
+        for (int i = 1; i < depth; i++) {
+            WorkUnit next = namedUnit("Step", new ArrayList<>());
+            next.setDependents(last);
+            last = next;
+        }
+        processPlant.queueWorkUnit(last);
+        assertTrue(State.DONE.equals(last.getState()));
+
+        // A failure at the bottom cascades all the way up
+        WorkUnit broken = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                throw new IllegalStateException("Tripped");
+            }
+        };
+        last = broken;
+        for (int i = 1; i < depth; i++) {
+            WorkUnit next = namedUnit("Step", new ArrayList<>());
+            next.setDependents(last);
+            last = next;
+        }
+        processPlant.queueWorkUnit(last);
+        assertTrue(State.ERROR.equals(last.getState()));
+        assertTrue("Tripped".equals(last.getExceptionThrown().getMessage()));
+
+        ITask chain = new TaskShell() {
+            @Override
+            public Collection<ITask> getDependents() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public void performTask(Map<String, ?> params) { }
+        };
+        for (int i = 1; i < depth; i++) {
+            ITask dependent = chain;
+            chain = new TaskShell() {
+                @Override
+                public Collection<ITask> getDependents() {
+                    return Collections.singletonList(dependent);
+                }
+
+                @Override
+                public void performTask(Map<String, ?> params) { }
+            };
+        }
+        assertTrue(State.DONE.equals(processPlant.queueTask(chain).getState()));
+        assertTrue(processPlant.compile(chain).size() == depth);
+    }
+
+    @Test
+    public void spawnChildrenTest() {
+        List<String> rows = Collections.synchronizedList(new ArrayList<>());
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        AtomicReference<String> readThread = new AtomicReference<>();
+        List<State> parentStates = Collections.synchronizedList(new ArrayList<>());
+        WorkUnit read = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                ITaskRunner parent = this;
+                readThread.set(Thread.currentThread().getName());
+                // Only now is it known how many rows there are
+                List<ITaskRunner> rowJobs = new ArrayList<>();
+                for (int i = 0; i < 5; i++) {
+                    String row = "Row " + i;
+                    rowJobs.add(new WorkUnit() {
+                        @Override
+                        public void performTask(Map<String, ?> params) {
+                            try {
+                                Thread.sleep(10);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            rows.add(row);
+                        }
+                    });
+                }
+                // Merging waits on the rows, and reading isn't complete until merging is
+                WorkUnit merge = new WorkUnit() {
+                    @Override
+                    public void performTask(Map<String, ?> params) {
+                        rows.add("Merged " + rows.size());
+                        parentStates.add(parent.getState());
+                    }
+                };
+                merge.setDependents(rowJobs);
+                getProcessPlant().spawn(this, merge);
+            }
+        };
+        WorkUnit report = namedUnit("Report", started);
+        report.setDependents(read);
+        processPlant.queueWorkUnit(report);
+
+        assertTrue(State.DONE.equals(report.getState()) && State.DONE.equals(read.getState()));
+        assertTrue(rows.size() == 6 && "Merged 5".equals(rows.get(5)));
+        // The parent isn't DONE until its spawned work is
+        assertTrue(parentStates.size() == 1 && State.IN_PROGRESS.equals(parentStates.get(0)));
+        // Finished by the merge, but still the thread that read it
+        assertTrue(readThread.get().equals(read.getTimes().getThreadName()));
+
+        // A spawned child that fails fails the parent
+        List<Map<String, ?>> handled = Collections.synchronizedList(new ArrayList<>());
+        WorkUnit fragile = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                getProcessPlant().spawn(this, new WorkUnit() {
+                    @Override
+                    public void performTask(Map<String, ?> params) {
+                        throw new IllegalStateException("Bad row");
+                    }
+                });
+            }
+
+            @Override
+            public void exceptionHandling(Exception exception, Map<String, ?> params) {
+                handled.add(params);
+            }
+        };
+        WorkUnit failedReport = namedUnit("Report", started);
+        failedReport.setDependents(fragile);
+        processPlant.queueWorkUnit(failedReport);
+
+        assertTrue(State.ERROR.equals(fragile.getState()) && State.ERROR.equals(failedReport.getState()));
+        assertTrue("Bad row".equals(failedReport.getExceptionThrown().getMessage()));
+        assertTrue(handled.size() == 1 && handled.get(0) != null);
+        assertTrue(started.size() == 1);
+        try {
+            processPlant.spawn(read, namedUnit("Too late", started));
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            // The parent has already finished
+        }
+    }
+
+    @Test
+    public void parallelForTest() {
+        // A read resource is claimed once for the whole task and shared by every chunk
+        Sharable<Integer> offset = new Sharable<>(1000);
+        ParallelForTask<Long> sum = new ParallelForTask<>("Sum", 0, 100000, 0L, (from, to, params) -> {
+            long chunkSum = 0;
+            int add = (Integer) params.get("offset");
+            for (int i = from; i < to; i++) {
+                chunkSum += i + add;
+            }
+            return chunkSum;
+        }, Long::sum);
+        sum.addReadResource("offset", offset);
+        processPlant.queueWorkUnit(sum);
+
+        assertTrue(State.DONE.equals(sum.getState()));
+        assertTrue(sum.getResult() == 99999L * 100000 / 2 + 1000L * 100000);
+        assertTrue(sum.getNanosPerElement() > 0);
+
+        // Slow elements are spread across threads and still combined in order
+        List<String> letters = Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l");
+        Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+        ParallelForTask<String> upper = ParallelForTask.overElements("Upper", letters, "", letter -> {
+            threads.add(Thread.currentThread().getName());
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return letter.toUpperCase();
+        }, String::concat);
+        processPlant.queueWorkUnit(upper);
+
+        assertTrue("ABCDEFGHIJKL".equals(upper.getResult()));
+        assertTrue(threads.size() > 1);
+
+        // A failing chunk fails the task
+        ParallelForTask<Integer> broken = new ParallelForTask<>("Broken", 0, 50, 0, (from, to, params) -> {
+            if (to > 40) {
+                throw new IllegalStateException("Bad element");
+            }
+            return to - from;
+        }, Integer::sum);
+        processPlant.queueWorkUnit(broken);
+
+        assertTrue(State.ERROR.equals(broken.getState()));
+        assertTrue("Bad element".equals(broken.getExceptionThrown().getMessage()));
+    }
+
+    @Test
+    public void outputsPassedToParentTest() {
+        // Each count hands its result to the total instead of adding to a shared accumulator
+        List<ITaskRunner> counts = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            int count = i;
+            counts.add(new WorkUnit() {
+                @Override
+                public void performTask(Map<String, ?> params) {
+                    setOutput(count);
+                }
+            });
+        }
+        ParallelForTask<Integer> squares = new ParallelForTask<>("Squares", 1, 4, 0, (from, to, params) -> {
+            int chunkSum = 0;
+            for (int i = from; i < to; i++) {
+                chunkSum += i * i;
+            }
+            return chunkSum;
+        }, Integer::sum);
+        counts.add(squares);
+        List<Integer> inputs = new ArrayList<>();
+        WorkUnit total = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                inputs.addAll(getInputs(Integer.class));
+                setOutput(inputs.stream().mapToInt(Integer::intValue).sum());
+            }
+        };
+        total.setDependents(counts);
+        processPlant.queueWorkUnit(total);
+
+        assertTrue(State.DONE.equals(total.getState()));
+        assertTrue(inputs.size() == 11 && inputs.get(0) == 1 && inputs.get(10) == 14);
+        assertTrue(Integer.valueOf(55 + 14).equals(total.getOutput()));
+        try {
+            total.setOutput(0);
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            // Outputs are written once
+        }
+
+        // An ITask graph hands outputs along the same way, both on its own and as a plan that runs many times
+        List<ITask> taskCounts = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            int count = i;
+            taskCounts.add(new TaskShell() {
+                @Override
+                public Object performTask(Map<String, ?> params, List<Object> inputs) {
+                    return count;
+                }
+
+                @Override
+                public Collection<ITask> getDependents() {
+                    return Collections.emptyList();
+                }
+            });
+        }
+        ITask taskTotal = new TaskShell() {
+            @Override
+            public Object performTask(Map<String, ?> params, List<Object> inputs) {
+                return inputs.stream().mapToInt(input -> (Integer) input).sum();
+            }
+
+            @Override
+            public Collection<ITask> getDependents() {
+                return taskCounts;
+            }
+        };
+        assertTrue(Integer.valueOf(6).equals(processPlant.queueTask(taskTotal).getOutput()));
+        ExecutionPlan plan = processPlant.compile(taskTotal);
+        for (int run = 0; run < 3; run++) {
+            assertTrue(Integer.valueOf(6).equals(processPlant.submitPlan(plan).join().getOutput()));
+        }
+    }
+
+    @Test
+    public void admissionLimitTest() throws InterruptedException {
+        ProcessPlant limitedPlant = new ProcessPlant(2);
+        AdmissionLimit limit = AdmissionLimit.rejecting(1, AdmissionLimit.Unit.GRAPHS);
+        limitedPlant.setAdmissionLimit(limit);
+        CountDownLatch hold = new CountDownLatch(1);
+        WorkUnit slow = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                try {
+                    hold.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        CompletableFuture<ITaskRunner> slowDone = limitedPlant.submitWorkUnit(slow);
+        assertTrue(limit.getDepth() == 1);
+
+        // Full, so the next graph is rejected
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        try {
+            limitedPlant.submitWorkUnit(namedUnit("Rejected", started));
+            assertTrue(false);
+        } catch (RejectedExecutionException e) {
+            assertTrue(limit.getRejected() == 1);
+        }
+
+        // Blocking gives up once the timeout passes
+        limitedPlant.setAdmissionLimit(AdmissionLimit.blocking(1, AdmissionLimit.Unit.GRAPHS, 20));
+        WorkUnit slowToo = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                try {
+                    hold.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        CompletableFuture<ITaskRunner> slowTooDone = limitedPlant.submitWorkUnit(slowToo);
+        try {
+            limitedPlant.submitWorkUnit(namedUnit("Timed out", started));
+            assertTrue(false);
+        } catch (RejectedExecutionException e) {
+            assertTrue(limitedPlant.getAdmissionLimit().getWaiting() == 0);
+        }
+
+        // Caller runs processes the whole graph on the submitting thread
+        AdmissionLimit callerRuns = AdmissionLimit.callerRuns(2, AdmissionLimit.Unit.RUNNERS);
+        limitedPlant.setAdmissionLimit(callerRuns);
+        WorkUnit slowAgain = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                try {
+                    hold.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        WorkUnit slowPair = namedUnit("Pair", started);
+        slowPair.setDependents(slowAgain);
+        CompletableFuture<ITaskRunner> pairDone = limitedPlant.submitWorkUnit(slowPair);
+        assertTrue(callerRuns.getDepth() == 2);
+        Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+        WorkUnit inline = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                threads.add(Thread.currentThread().getName());
+            }
+        };
+        WorkUnit inlineChild = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                threads.add(Thread.currentThread().getName());
+            }
+        };
+        inline.setDependents(inlineChild);
+        CompletableFuture<ITaskRunner> inlineDone = limitedPlant.submitWorkUnit(inline);
+
+        // Submitting doesn't return until the caller has finished the graph
+        assertTrue(inlineDone.isDone() && State.DONE.equals(inline.getState()) && callerRuns.getCallerRuns() == 1);
+        assertTrue(threads.size() == 1 && threads.contains(Thread.currentThread().getName()));
+
+        // Chunks of a parallel task left to its caller stay on the caller too
+        threads.clear();
+        ParallelForTask<Integer> counted = new ParallelForTask<>("Counted", 0, 1000, 0, (from, to, params) -> {
+            threads.add(Thread.currentThread().getName());
+            return to - from;
+        }, Integer::sum);
+        limitedPlant.queueWorkUnit(counted);
+        assertTrue(counted.getResult() == 1000 && callerRuns.getCallerRuns() == 2);
+        assertTrue(threads.size() == 1 && threads.contains(Thread.currentThread().getName()));
+
+        hold.countDown();
+        slowDone.join();
+        slowTooDone.join();
+        pairDone.join();
+        limitedPlant.shutdown();
+        long deadline = System.currentTimeMillis() + 1000;
+        while (callerRuns.getDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(callerRuns.getDepth() == 0);
+    }
+
+    @Test
+    public void callerRunsNestedSubmitTest() throws Exception {
+        ProcessPlant limitedPlant = new ProcessPlant(2);
+        limitedPlant.setAdmissionLimit(AdmissionLimit.callerRuns(1, AdmissionLimit.Unit.GRAPHS));
+        CountDownLatch hold = new CountDownLatch(1);
+        WorkUnit slow = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                try {
+                    hold.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        CompletableFuture<ITaskRunner> slowDone = limitedPlant.submitWorkUnit(slow);
+
+        // Left to its caller, then submits a graph that fits once the slow one is done and waits for it
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        WorkUnit inner = namedUnit("Inner", started);
+        inner.setDependents(namedUnit("Inner step", started));
+        WorkUnit outer = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                hold.countDown();
+                slowDone.join();
+                getProcessPlant().queueWorkUnit(inner);
+            }
+        };
+        CompletableFuture<Void> submitted = CompletableFuture.runAsync(() -> limitedPlant.queueWorkUnit(outer));
+        submitted.get(5, TimeUnit.SECONDS);
+        limitedPlant.shutdown();
+
+        assertTrue(State.DONE.equals(outer.getState()) && State.DONE.equals(inner.getState()));
+        assertTrue(limitedPlant.getAdmissionLimit().getCallerRuns() == 1 && started.size() == 2);
+    }
+
+    @Test
+    public void fairShareTest() throws InterruptedException {
+        ProcessPlant sharedPlant = new ProcessPlant(2);
+        FairShareScheduler scheduler = new FairShareScheduler();
+        sharedPlant.setFairShareScheduler(scheduler);
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+        // A batch big enough to keep both threads busy for a while
+        WorkUnit batch = namedUnit("Batch", started);
+        List<ITaskRunner> batchSteps = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            batchSteps.add(new WorkUnit() {
+                @Override
+                public void performTask(Map<String, ?> params) {
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        batch.setDependents(batchSteps);
+        CompletableFuture<ITaskRunner> batchDone = sharedPlant.submitWorkUnit(batch);
+        Thread.sleep(20);
+
+        // A small request submitted behind it doesn't wait for the whole batch
+        WorkUnit request = namedUnit("Request", started);
+        request.setDependents(namedUnit("Lookup", started), namedUnit("Check", started));
+        request.setFairShare(new FairShare("Requests", 4));
+        sharedPlant.queueWorkUnit(request);
+
+        assertTrue(State.DONE.equals(request.getState()));
+        assertTrue(!batchDone.isDone() && scheduler.getWaiting() > 0);
+        assertTrue(batch.getFairShare() != null && batchSteps.get(0).getFairShare() == batch.getFairShare());
+
+        batchDone.join();
+        sharedPlant.shutdown();
+        assertTrue(State.DONE.equals(batch.getState()) && scheduler.getWaiting() == 0);
+
+        // Within a share the longest remaining critical path still goes first
+        ProcessPlant singlePlant = new ProcessPlant(1);
+        singlePlant.setCostHistory(new TaskCostHistory());
+        singlePlant.setFairShareScheduler(new FairShareScheduler());
+        List<String> errands = Collections.synchronizedList(new ArrayList<>());
+        WorkUnit day = runErrandsOnOneThread(singlePlant, errands);
+        assertTrue(State.DONE.equals(day.getState()) && "Commute 3".equals(errands.get(0)));
+    }
+
+    @Test
+    public void cycleRejectedTest() {
+        WorkUnit wake = namedUnit("Wake", new ArrayList<>());
+        WorkUnit sleep = namedUnit("Sleep", new ArrayList<>());
+        WorkUnit dream = namedUnit("Dream", new ArrayList<>());
+        wake.setDependents(sleep);
+        sleep.setDependents(dream);
+        dream.setDependents(sleep);
+        try {
+            processPlant.submitWorkUnit(wake);
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Sleep -> Dream -> Sleep"));
+        }
+        // Nothing was started
+        assertTrue(State.READY.equals(dream.getState()));
+    }
+
+    @Test
+    public void sharedDependentCountedOnceTest() {
+        WorkUnit wake = new WorkUnit() {
+            @Override
+            public void performTask(Map<String, ?> params) {
+                try {
+                    Thread.sleep(30);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        WorkUnit eat = namedUnit("Eat", new ArrayList<>());
+        WorkUnit dress = namedUnit("Dress", new ArrayList<>());
+        eat.setDependents(wake);
+        dress.setDependents(wake);
+        WorkUnit leave = namedUnit("Leave", new ArrayList<>());
+        leave.setDependents(eat, dress);
+        processPlant.queueWorkUnit(leave);
+
+        long tasks = wake.getTaskTime() + eat.getTaskTime() + dress.getTaskTime() + leave.getTaskTime();
+        assertTrue(wake.getTaskTime() >= 30 && leave.getTotalTime() == tasks);
+    }
+
     @Test
     public void exampleMorningPrepShellTest() {
         // Refers to the exampleMorningPrepTest